@@ -1,95 +1,159 @@
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
- * A class representing shared characteristics of animals.
+ * An animal of any species of the species table. How it lives is the
+ * same for every species: it ages, grows hungry, breeds, eats the prey
+ * of its diet, moves and dies. What differs between species, such as
+ * when it is active, what it eats and how it breeds, is looked up in
+ * the table by its species code.
  * 
  * @author David J. Barnes and Michael Kölling
  * @author Leticia Piucco Marques and Ruobing Zhao
  * @version 2020.02.23
  */
-public abstract class Animal extends Life
+public final class Animal extends Life
 {
-    // Whether the animal is female or not.
-    private boolean female;
-    // Whether the animal is infected by disease or not.
-    private boolean infected = false;
-    // Whether the ill animal is cured or not.
-    private boolean cured = false;
-    // The likelihood of ill animal being cured.
-    protected double cureProb;
-    // Maximum number of animals can be infected by one ill animal.
-    private int maxInfection;
-    // Number of days the animal has been infected.    
-    private int infectedDay;   
-    // The animal's food level, which is increased by eating food.
-    protected int foodLevel;
-
-    /**
-     * Create a new animal at location in field.
+    // The bytes written by writeState.
+    public static final int STATE_SIZE = 4 + 4 + 1 + 1 + 1 + 4 + 4;
+    // Infection status codes: never infected, infected, and cured
+    // (which cannot be infected again).
+    public static final byte HEALTHY = 0;
+    public static final byte INFECTED = 1;
+    public static final byte CURED = 2;
+    // The periods in which an animal can be active, combined in an
+    // activity mask, and the number of possible masks.
+    public static final int ACTIVE_BY_DAY = 1;
+    public static final int ACTIVE_BY_NIGHT = 2;
+    public static final int ACTIVITIES = 4;
+
+    // The state of the animal is kept in the store of its species:
+    // whether it is female, whether it is healthy, infected or cured
+    // (kept in the field as well, where the view reads it), the id of
+    // the disease caught, the most animals it can infect when ill, the
+    // number of days it has been infected, and its food level, which is
+    // increased by eating food.
+
+    /**
+     * Create an animal. An animal can be created as a new born (age zero
+     * and not hungry) or with a random age and food level.
      * 
+     * @param species The code of the animal's species.
+     * @param randomAge If true, the animal will have random age and hunger level.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param id The number identifying the animal's random draws.
+     */
+    public Animal(byte species, boolean randomAge, Field field, Location location, long id)
+    {
+        super(species, field, location, id);
+        boolean female = field.getRandomizer().nextBoolean(id, Randomizer.GENDER);
+        getPage().female[getEntry()] = female;
+        field.setFemale(location, female);
+        getPage().maxInfection[getEntry()] = (byte) nextInt(Randomizer.INFECTION_LIMIT, 5);
+        int foodLevel = Species.getFoodLevel(species);
+        if(randomAge) {
+            setAge(nextInt(Randomizer.AGE, getMaxAge()));
+            setFoodLevel(nextInt(Randomizer.FOOD_LEVEL, foodLevel));
+        }
+        else {
+            setAge(0);
+            setFoodLevel(foodLevel);
+        }
+    }
+
+    /**
+     * Return the periods in which the animal does more than rest.
+     * The simulator only calls dayAct() and nightAct() in those periods,
+     * and lets the animal rest in the others.
+     * 
+     * @return A mask of ACTIVE_BY_DAY and ACTIVE_BY_NIGHT.
      */
-    public Animal(Field field, Location location)
+    int getActivity()
     {
-        super(field, location);
-        female = rand.nextBoolean();
-        maxInfection = rand.nextInt(5); 
+        return Species.getActivity(getSpecies());
     }
 
     /**
-     * Make this animal act during the day.
+     * Make this animal act during the day, if its species is active
+     * by day, and rest otherwise.
      * 
      * @param newAnimals A list to receive newly born animals.
      */
     protected void dayAct(List<Animal> newAnimals)
     {
-        incrementAge();
-        incrementHunger();
+        if((getActivity() & ACTIVE_BY_DAY) != 0) {
+            act(newAnimals);
+        }
+        else {
+            rest();
+        }
     }
 
     /**
-     * Make this animal act during the night.
+     * Make this animal act during the night, if its species is active
+     * by night, and rest otherwise.
      * 
      * @param newAnimals A list to receive newly born animals.
      */
     protected void nightAct(List<Animal> newAnimals)
     {
-        incrementAge();
-        incrementHunger();
+        if((getActivity() & ACTIVE_BY_NIGHT) != 0) {
+            act(newAnimals);
+        }
+        else {
+            rest();
+        }
     }
 
     /**
-     * Make this animal act when snowing.
+     * This is what the animal does when it is active: it looks for
+     * prey. In the process, it might breed, die of hunger, or die of
+     * old age.
+     * 
+     * @param newAnimals A list to receive newly born animals.
      */
-    protected void snowAct()
+    private void act(List<Animal> newAnimals)
     {
         incrementAge();
         incrementHunger();
+        if(isAlive()) {
+            giveBirth(newAnimals);
+            // Move towards a source of food if found.
+            Location newLocation = findFood();
+            if(newLocation == null) { 
+                // No food found - try to move to a free location.
+                newLocation = getField().freeAdjacentLocation(getLocation(), randomOrdering(Randomizer.MOVE));
+            }
+            // See if it was possible to move.
+            if(newLocation != null) {
+                setLocation(newLocation);
+            }
+            else {
+                // Overcrowding.
+                setDead(DeathCause.OVERCROWDING);
+            }
+        }
     }
 
     /**
-     * Check whether the animal is a female.
-     * 
-     * @return variable female.
+     * Make this animal rest for a step: it only grows older and
+     * hungrier, which could result in its death.
      */
-    private boolean isFemale()
+    void rest()
     {
-        return female;
+        incrementAge();
+        incrementHunger();
     }
 
     /**
-     * Check whether two animals are of different genders.
+     * Check whether the animal is a female.
      * 
-     * @param animal1 One of the animals that is being compared.
-     * @param animal2 Another animal that is being compared.
+     * @return variable female.
      */
-    private boolean isDifferentGender(Animal animal1, Animal animal2)
+    boolean isFemale()
     {
-        if(animal1.isFemale() != animal2.isFemale()) {
-            return true;
-        }
-        return false;
+        return getPage().female[getEntry()];
     }
 
     /**
@@ -98,9 +162,9 @@ public abstract class Animal extends Life
      */
     protected void incrementAge()
     {
-        age++;
-        if(age > MAX_AGE) {
-            setDead();
+        int age = ++getPage().age[getEntry()];
+        if(age > getMaxAge()) {
+            setDead(DeathCause.AGE);
         }
     } 
 
@@ -109,12 +173,28 @@ public abstract class Animal extends Life
      */
     protected void incrementHunger()
     {
-        foodLevel--;
+        int foodLevel = --getPage().food[getEntry()];
         if(foodLevel <= 0) {
-            setDead();
+            setDead(DeathCause.STARVATION);
         }
     }
 
+    /**
+     * @return The food level of the animal.
+     */
+    protected int getFoodLevel()
+    {
+        return getPage().food[getEntry()];
+    }
+
+    /**
+     * @param foodLevel The new food level of the animal.
+     */
+    protected void setFoodLevel(int foodLevel)
+    {
+        getPage().food[getEntry()] = foodLevel;
+    }
+
     /**
      * Check whether the animal can breed or not.
      * 
@@ -122,44 +202,89 @@ public abstract class Animal extends Life
      */
     private boolean canBreed(int breed_age)
     {
-        return age >= breed_age;
+        return getAge() >= breed_age;
     }
 
     /**
      * Check whether the animal can breed with its neighbour, i.o if the neighbour is
      * of the same species and different gender.
+     */
+    protected boolean breedWithNeighbour()
+    {
+        return getField().getMateMask(getLocation(), getSpecies(), isFemale()) != 0;
+    }
+
+    /**
+     * Eat one of the adjacent creatures of the species in the animal's
+     * diet, if there are any, chosen at random. Eating restores the
+     * food level to the one the prey gives.
+     * 
+     * @return Where food was found, or null if it wasn't.
+     */
+    private Location findFood()
+    {
+        Field field = getField();
+        Location location = getLocation();
+        byte species = getSpecies();
+        byte[] prey = Species.getPrey(species);
+        int found = 0;
+        for(int i = 0; i < prey.length; i++) {
+            found |= field.getNeighbourMask(location, prey[i]);
+        }
+        if(found == 0) {
+            return null;
+        }
+        int direction = Field.firstDirection(found, randomOrdering(Randomizer.FOOD_SEARCH));
+        Life food = (Life) field.getAdjacentObject(location, direction);
+        food.setDead(DeathCause.PREDATION);
+        setFoodLevel(Species.getFoodValue(species, food.getSpecies()));
+        return field.adjacentLocation(location, direction);
+    }
+
+    /**
+     * Check whether or not this animal is to give birth at this step.
+     * New births will be made into free adjacent locations. Species
+     * that need a mate only give birth next to one.
      * 
-     * @param oneAnimal The animal being checked.
+     * @param newAnimals A list to return newly born animals.
      */
-    protected boolean breedWithNeighbour(Animal oneAnimal)
+    private void giveBirth(List<Animal> newAnimals)
     {
-        List<Location> neighbour = getField().adjacentLocations(getLocation());
-        for(int i = 0; i < neighbour.size(); i++) {
-            Object newObject = getField().getObjectAt(neighbour.get(i));
-            if((newObject != null) && isSameSpecies(oneAnimal, newObject)){
-                Animal newAnimal = (Animal) newObject;
-                if(isDifferentGender(oneAnimal, newAnimal)) {
-                    return true;
+        // New animals are born into adjacent locations.
+        // Visit the adjacent cells in a random order.
+        Field field = getField();
+        byte species = getSpecies();
+        int births = breed();
+        if(births > 0 && (!Species.needsMate(species) || breedWithNeighbour())) {
+            Location location = getLocation();
+            int ordering = randomOrdering(Randomizer.BIRTH_PLACE);
+            for(int i = 0; i < Field.NEIGHBOURS && births > 0; i++) {
+                int direction = Field.direction(ordering, i);
+                if(field.isAdjacentFree(location, direction)) {
+                    Location loc = field.adjacentLocation(location, direction);
+                    Animal child = new Animal(species, false, field, loc, childId(births));
+                    newAnimals.add(child);
+                    births--;
                 }
             }
         }
-        return false;
     }
 
     /**
      * Generate a number representing the number of births,
-     * if the animal can breed.
+     * if the animal can breed. How the animal breeds is set by the
+     * parameters of its species.
      * 
-     * @param breed_age Breeding age of the animal.
-     * @param breed_prob Breeding probabilty of the animal.
-     * @param max_litter Maximum number of births.
      * @return The number of births (may be zero).
      */
-    protected int breed(int breed_age,double breed_prob, int max_litter)
+    protected int breed()
     {
+        SimulationParameters parameters = getField().getParameters();
+        byte species = getSpecies();
         int births = 0;
-        if(canBreed(breed_age) && rand.nextDouble() <= breed_prob) {
-            births = rand.nextInt(max_litter) + 1;
+        if(canBreed(parameters.getBreedingAge(species))
+           && nextDouble(Randomizer.BREEDING) <= parameters.getBreedingProbability(species)) {
+            births = nextInt(Randomizer.LITTER, parameters.getMaxLitterSize(species)) + 1;
         }
         return births;
     }
@@ -171,68 +296,127 @@ public abstract class Animal extends Life
      */
     public boolean canBeInfected()
     {
-        if(!infected && !cured) {
-            return true;
-        }
-        else {
-            return false;
-        }
+        return getStatus() == HEALTHY;
     }
 
     /**
-     * Change the infection state of an animal.
+     * @return The infection status: HEALTHY, INFECTED or CURED.
      */
-    public void beingInfected()
+    public byte getStatus()
     {
-        infected = true;
+        return getPage().status[getEntry()];
     }
 
     /**
-     * Make this animal act when it is infected by disease and
-     * change the color of cured animal into its original color.
+     * Change the infection state of an animal.
      * 
-     * @param view Object of SimulatorView.
+     * @param id The id of the disease caught, in the DiseaseRegistry.
+     */
+    public void beingInfected(byte id)
+    {
+        getPage().disease[getEntry()] = id;
+        setStatus(INFECTED);
+        getField().getMetrics().recordInfection(getSpecies());
+    }
+
+    /**
+     * Make this animal act when it is infected by disease.
+     * An infected animal dies after some days, unless it is cured.
      */
-    public void infectAndCure(SimulatorView view)
+    public void infectAndCure()
     {
-        if(infected) {
-            infectedDay++;
-            if(infectedDay >= 5) {
-                setDead();
+        if(getStatus() == INFECTED) {
+            byte disease = getPage().disease[getEntry()];
+            Disease illness = getField().getParameters().getDiseases().get(disease);
+            int infectedDay = ++getPage().infectedDays[getEntry()];
+            if(infectedDay >= illness.getLethalDays()) {
+                setDead(DeathCause.DISEASE);
             }
             
             // Try to cure the infected animal.
-            else if(rand.nextDouble() < cureProb) {
-                infected = false;
-                cured = true;
-                // Set the color of cured animal back to its origional color.
-                view.setIndividualColor(this, view.getClassColor(this.getClass()));
+            else if(nextDouble(Randomizer.CURE) < illness.getCureProbability()) {
+                setStatus(CURED);
+                getField().getMetrics().recordCure(getSpecies());
             }
             
             else {
-                infectNeighbour(view);
+                infectNeighbour();
             }
         }
     }
 
     /**
-     * Infect neibour animal of same species when an animal is ill.
+     * Change the infection status, in the animal and in its field.
      * 
-     * @param view Object of SimulatorView.
+     * @param code The new status.
      */
-    private void infectNeighbour(SimulatorView view)
+    private void setStatus(byte code)
     {
-        List<Location> neighbour = getField().adjacentLocations(getLocation());
+        getPage().status[getEntry()] = code;
+        getField().setStatus(getLocation(), code);
+    }
 
-        for(int j = 0; (j < neighbour.size()) && (j < maxInfection); j++) {
-            Object neighbourObj = getField().getObjectAt(neighbour.get(j));
+    /**
+     * Infect neibour animal of same species when an animal is ill.
+     */
+    private void infectNeighbour()
+    {
+        Field field = getField();
+        Location location = getLocation();
+        int ordering = randomOrdering(Randomizer.SPREAD);
+        int maxInfection = getPage().maxInfection[getEntry()];
+        // Only cells within the field count towards the infection limit.
+        int visited = 0;
+        for(int i = 0; (i < Field.NEIGHBOURS) && (visited < maxInfection); i++) {
+            int direction = Field.direction(ordering, i);
+            if(!field.hasAdjacent(location, direction)) {
+                continue;
+            }
+            visited++;
+            Object neighbourObj = field.getAdjacentObject(location, direction);
             if(neighbourObj instanceof Animal) {
                 Animal neighbourAnimal = (Animal)neighbourObj; 
                 if(isSameSpecies(this, neighbourAnimal) && neighbourAnimal.canBeInfected()) {
-                    neighbourAnimal.infectAndCure(view);
+                    neighbourAnimal.infectAndCure();
                 } 
             }
         }
     }
 
+    /**
+     * Write the state of the animal for a checkpoint.
+     * 
+     * @param buffer The buffer to write to.
+     */
+    protected void writeState(ByteBuffer buffer)
+    {
+        super.writeState(buffer);
+        buffer.putInt(getFoodLevel());
+        CreatureStore.Page page = getPage();
+        int entry = getEntry();
+        buffer.put((byte) (page.female[entry] ? 1 : 0));
+        buffer.put(page.status[entry]);
+        buffer.put(page.disease[entry]);
+        buffer.putInt(page.infectedDays[entry]);
+        buffer.putInt(page.maxInfection[entry]);
+    }
+
+    /**
+     * Read the state written by writeState.
+     * 
+     * @param buffer The buffer to read from.
+     */
+    protected void readState(ByteBuffer buffer)
+    {
+        super.readState(buffer);
+        setFoodLevel(buffer.getInt());
+        CreatureStore.Page page = getPage();
+        int entry = getEntry();
+        page.female[entry] = buffer.get() != 0;
+        getField().setFemale(getLocation(), page.female[entry]);
+        setStatus(buffer.get());
+        page.disease[entry] = buffer.get();
+        page.infectedDays[entry] = buffer.getInt();
+        page.maxInfection[entry] = (byte) buffer.getInt();
+    }
 }
@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Save the full state of a simulation to a binary file, and read it
+ * back. A checkpoint holds a header, the state written by the
+ * simulator and a CRC32 of both, all in big-endian order.
+ *
+ * The checkpoint is put into a buffer by put(), on the thread running
+ * the simulation, which is quick, and then written to disk by a thread
+ * of its own, so the steps go on while the file is written. The file is
+ * first written under a temporary name and then moved over the old
+ * checkpoint, so a crash never leaves a half written checkpoint behind.
+ * If the previous checkpoint is still being written when the next one
+ * is due, the next one is skipped.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class Checkpoint
+{
+    // Marks the start of a checkpoint file ("AOSC").
+    private static final int MAGIC = 0x414f5343;
+    // The version of the format.
+    private static final int VERSION = 4;
+    // The bytes before the state of the simulator.
+    private static final int HEADER_SIZE = 8;
+    // The bytes after the state of the simulator.
+    private static final int TRAILER_SIZE = 8;
+
+    // The checkpoint file, and the file it is written to first.
+    private Path file;
+    private Path temporary;
+    // The thread writing checkpoints to disk.
+    private ExecutorService writer;
+    // Whether a checkpoint is being written.
+    private AtomicBoolean writing;
+    // The state of the last checkpoint, reused for the next.
+    private ByteBuffer buffer;
+
+    /**
+     * Create a checkpoint kept in the given file.
+     *
+     * @param file The name of the checkpoint file.
+     */
+    public Checkpoint(String file)
+    {
+        this.file = Paths.get(file);
+        temporary = Paths.get(file + ".tmp");
+        writing = new AtomicBoolean();
+        writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Take a checkpoint of the simulator and start writing it to disk.
+     * Must be called between steps, by the thread running them.
+     *
+     * @param simulator The simulator to save.
+     * @return false if the checkpoint was skipped because the previous
+     *         one is still being written.
+     */
+    public boolean save(Simulator simulator)
+    {
+        if(!writing.compareAndSet(false, true)) {
+            return false;
+        }
+        int size = sizeOf(simulator);
+        if(buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(size + size / 4);
+        }
+        buffer.clear();
+        put(simulator, buffer);
+        buffer.flip();
+
+        ByteBuffer contents = buffer;
+        writer.execute(() -> {
+            try {
+                write(contents);
+            }
+            catch(IOException e) {
+                System.out.println("Could not write checkpoint " + file + ": " + e.getMessage());
+            }
+            finally {
+                writing.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Return the bytes of a checkpoint of the simulator, as put() writes.
+     *
+     * @param simulator The simulator to save.
+     * @return The size of its checkpoint.
+     */
+    public static int sizeOf(Simulator simulator)
+    {
+        return HEADER_SIZE + simulator.getStateSize() + TRAILER_SIZE;
+    }
+
+    /**
+     * Put a whole checkpoint of the simulator into a buffer: the header,
+     * the state and the CRC. Checkpoint files hold exactly this, and
+     * files of other kinds may keep checkpoints of their own with it.
+     * Must be called between steps, by the thread running them.
+     *
+     * @param simulator The simulator to save.
+     * @param buffer The buffer to write to, with room for sizeOf() bytes.
+     */
+    public static void put(Simulator simulator, ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        simulator.writeState(buffer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(buffer.position()));
+        buffer.putLong(crc.getValue());
+    }
+
+    /**
+     * Wait for the checkpoint being written, if any, and stop the
+     * writing thread.
+     */
+    public void close()
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a checkpoint file and check that it is complete.
+     *
+     * @param file The name of the checkpoint file.
+     * @return The state of the simulator saved in the file.
+     * @throws IOException If the file cannot be read or is not a
+     *                     valid checkpoint.
+     */
+    public static ByteBuffer read(String file) throws IOException
+    {
+        ByteBuffer contents;
+        try(FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            contents = ByteBuffer.allocateDirect((int) size);
+            while(contents.hasRemaining()) {
+                if(channel.read(contents) < 0) {
+                    throw new IOException(file + " is truncated");
+                }
+            }
+        }
+        contents.flip();
+        return unpack(contents, file);
+    }
+
+    /**
+     * Check that a checkpoint is complete.
+     *
+     * @param contents The checkpoint, from its position to its limit.
+     * @param source Where the checkpoint comes from, for the messages.
+     * @return The state of the simulator saved in the checkpoint.
+     * @throws IOException If it is not a valid checkpoint.
+     */
+    public static ByteBuffer unpack(ByteBuffer contents, String source) throws IOException
+    {
+        contents = contents.slice();
+        if(contents.limit() < HEADER_SIZE + TRAILER_SIZE || contents.getInt(0) != MAGIC) {
+            throw new IOException(source + " is not a checkpoint");
+        }
+        if(contents.getInt(4) != VERSION) {
+            throw new IOException(source + " has unsupported version " + contents.getInt(4));
+        }
+        int end = contents.limit() - TRAILER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate().limit(end));
+        if(crc.getValue() != contents.getLong(end)) {
+            throw new IOException(source + " is corrupt");
+        }
+        return contents.position(HEADER_SIZE).limit(end).slice();
+    }
+
+    /**
+     * Write a checkpoint to the temporary file and move it over the
+     * checkpoint file.
+     *
+     * @param contents The checkpoint, as put() writes it.
+     */
+    private void write(ByteBuffer contents) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(contents.hasRemaining()) {
+                channel.write(contents);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,399 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of the creatures of one species, kept in parallel arrays
+ * rather than in the creatures themselves: whether each is alive, its
+ * id, location and age, and for animals its sex, food level, state of
+ * infection, disease, days of infection and the most animals it can
+ * infect, or for plants its growth, rate of growth and steps grown.
+ * The species, the field and the age every creature of the species can
+ * live up to are kept once, for the whole store.
+ *
+ * Each creature is given a slot when it is created, and its state is
+ * found at that slot. Slots are grouped in pages of PAGE_SIZE, which
+ * are never moved once allocated, so the state of one creature can be
+ * used by one thread while another thread allocates a slot. A creature
+ * only keeps its page and its entry in the page.
+ *
+ * The store does not keep the creatures themselves: a living creature
+ * is always found in the field, at its location.
+ *
+ * Creatures that only rest can then be aged in bulk, by loops over
+ * the arrays of each page that the JIT compiler can vectorise, and
+ * for several steps at once when nothing else happens in between.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class CreatureStore
+{
+    // The slots in a page.
+    public static final int PAGE_SIZE = 1024;
+    // Shift and mask taking a slot to its page and its entry in the page.
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // The pages allocated so far. Volatile so that a page can be looked
+    // up without the lock by the thread that allocated a slot in it.
+    private volatile Page[] pages;
+    // The number of slots handed out, free or not.
+    private int size;
+    // Slots released and not yet handed out again.
+    private int[] free;
+    private int freeCount;
+    // The species of the creatures, and the field they live in.
+    private final byte species;
+    private final Field field;
+    // Whether the store holds plants rather than animals.
+    private final boolean plants;
+    // The age to which the creatures of the species can live.
+    private final int maxAge;
+
+    /**
+     * Create an empty store for the creatures of a species.
+     *
+     * @param species The species code, from the species table.
+     * @param field The field the creatures live in.
+     */
+    public CreatureStore(byte species, Field field)
+    {
+        this.species = species;
+        this.field = field;
+        pages = new Page[0];
+        free = new int[16];
+        plants = Species.isPlant(species);
+        maxAge = Species.getMaxAge(species);
+    }
+
+    /**
+     * @return The species code of the creatures.
+     */
+    public byte getSpecies()
+    {
+        return species;
+    }
+
+    /**
+     * @return The field the creatures live in.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * Give a creature a slot, with every counter at zero and no
+     * location yet.
+     *
+     * @param id The number identifying the creature's random draws.
+     * @return The slot of the creature.
+     */
+    public synchronized int allocate(long id)
+    {
+        int slot;
+        if(freeCount > 0) {
+            slot = free[--freeCount];
+        }
+        else {
+            slot = size++;
+            int page = slot >> PAGE_BITS;
+            if(page == pages.length) {
+                Page[] grown = new Page[pages.length + 1];
+                System.arraycopy(pages, 0, grown, 0, pages.length);
+                grown[page] = new Page(this, page << PAGE_BITS);
+                pages = grown;
+            }
+        }
+        pages[slot >> PAGE_BITS].reset(slot & PAGE_MASK, id);
+        return slot;
+    }
+
+    /**
+     * Release the slot of a creature that is dead and no longer used,
+     * so that it can be given to another creature.
+     *
+     * @param slot The slot of the creature.
+     */
+    public synchronized void release(int slot)
+    {
+        Page page = pages[slot >> PAGE_BITS];
+        page.live[slot & PAGE_MASK] = false;
+        page.locations[slot & PAGE_MASK] = null;
+        if(freeCount == free.length) {
+            int[] grown = new int[free.length * 2];
+            System.arraycopy(free, 0, grown, 0, freeCount);
+            free = grown;
+        }
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Release every slot.
+     */
+    public synchronized void clear()
+    {
+        for(Page page : pages) {
+            Arrays.fill(page.live, false);
+            Arrays.fill(page.locations, null);
+        }
+        size = 0;
+        freeCount = 0;
+    }
+
+    /**
+     * @param slot A slot of the store.
+     * @return The page holding the slot.
+     */
+    public Page getPage(int slot)
+    {
+        return pages[slot >> PAGE_BITS];
+    }
+
+    /**
+     * @param slot A slot of the store.
+     * @return The entry of the slot in its page.
+     */
+    public static int entryOf(int slot)
+    {
+        return slot & PAGE_MASK;
+    }
+
+    /**
+     * @return true if the store holds animals.
+     */
+    public boolean holdsAnimals()
+    {
+        return size > 0 && !plants;
+    }
+
+    /**
+     * @return true if the store holds plants.
+     */
+    public boolean holdsPlants()
+    {
+        return size > 0 && plants;
+    }
+
+    /**
+     * Let every living animal in the store rest for a step: each grows
+     * older and hungrier, and dies of old age or hunger when it must,
+     * as in Animal.rest(). Must not be called while other threads are
+     * changing the field.
+     */
+    public void rest()
+    {
+        advance(1);
+        int pageCount = (size + PAGE_MASK) >> PAGE_BITS;
+        for(int p = 0; p < pageCount; p++) {
+            Page page = pages[p];
+            for(int i = 0; i < PAGE_SIZE; i++) {
+                if(page.live[i]) {
+                    if(page.age[i] > maxAge) {
+                        page.getOwner(i).setDead(DeathCause.AGE);
+                    }
+                    else if(page.food[i] <= 0) {
+                        page.getOwner(i).setDead(DeathCause.STARVATION);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Let every living plant in the store grow for a step, at its
+     * current rate, and die of old age when it must, as in
+     * Plant.incrementAge(). Must not be called while other threads are
+     * changing the field.
+     */
+    public void grow()
+    {
+        advance(1);
+        int pageCount = (size + PAGE_MASK) >> PAGE_BITS;
+        for(int p = 0; p < pageCount; p++) {
+            Page page = pages[p];
+            for(int i = 0; i < PAGE_SIZE; i++) {
+                if(page.live[i] && page.growth[i] > maxAge) {
+                    page.getOwner(i).setDead(DeathCause.AGE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the counters of every slot on by a number of steps of
+     * resting, for animals, or of growing, for plants, without letting
+     * anybody die. Free slots are moved on as well, which keeps the
+     * loops simple; their counters are reset when they are handed out.
+     *
+     * @param steps The number of steps.
+     */
+    public void advance(int steps)
+    {
+        int pageCount = (size + PAGE_MASK) >> PAGE_BITS;
+        for(int p = 0; p < pageCount; p++) {
+            Page page = pages[p];
+            if(plants) {
+                int[] grown = page.steps;
+                double[] growth = page.growth;
+                double[] growRate = page.growRate;
+                for(int i = 0; i < PAGE_SIZE; i++) {
+                    grown[i] += steps;
+                    growth[i] = growRate[i] * grown[i];
+                }
+            }
+            else {
+                int[] age = page.age;
+                int[] food = page.food;
+                for(int i = 0; i < PAGE_SIZE; i++) {
+                    age[i] += steps;
+                    food[i] -= steps;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the living creatures that would die of old age or hunger
+     * within a number of steps of resting or growing, as rest() and
+     * grow() would let them, and the step each would die in. The
+     * counters are left as they are.
+     *
+     * @param steps The number of steps.
+     * @param dying The lists of the creatures dying in each step, from
+     *              the first; each creature found is added to one.
+     */
+    public void findDeaths(int steps, List<List<Life>> dying)
+    {
+        int pageCount = (size + PAGE_MASK) >> PAGE_BITS;
+        for(int p = 0; p < pageCount; p++) {
+            Page page = pages[p];
+            for(int i = 0; i < PAGE_SIZE; i++) {
+                if(!page.live[i]) {
+                    continue;
+                }
+                int death;
+                if(plants) {
+                    // Growth is not linear in the steps once rounded,
+                    // so each step is tried as grow() would compute it.
+                    death = 1;
+                    while(death <= steps
+                          && page.growRate[i] * (page.steps[i] + death) <= maxAge) {
+                        death++;
+                    }
+                }
+                else {
+                    // The age passes the maximum, or the food level
+                    // reaches zero, whichever comes first.
+                    long old = (long) maxAge - page.age[i] + 1;
+                    death = (int) Math.max(1, Math.min(old, page.food[i]));
+                }
+                if(death <= steps) {
+                    dying.get(death - 1).add(page.getOwner(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return why a creature found by findDeaths() dies.
+     *
+     * @param owner The creature.
+     * @param step The step it dies in, counted from one.
+     * @return DeathCause.AGE or DeathCause.STARVATION.
+     */
+    public int causeOfDeath(Life owner, int step)
+    {
+        if(plants || (long) owner.getAge() + step > maxAge) {
+            return DeathCause.AGE;
+        }
+        return DeathCause.STARVATION;
+    }
+
+    /**
+     * The state of PAGE_SIZE slots, one array per counter. Only the
+     * arrays of the kind of creature in the store are allocated.
+     */
+    static class Page
+    {
+        // The store the page belongs to, and the slot of its first entry.
+        final CreatureStore store;
+        final int first;
+        // Whether the creature in each slot is alive.
+        final boolean[] live = new boolean[PAGE_SIZE];
+        // The id and location of each creature. The location is null
+        // until the creature is placed, and once it is dead.
+        final long[] ids = new long[PAGE_SIZE];
+        final Location[] locations = new Location[PAGE_SIZE];
+        // The age of each creature.
+        final int[] age = new int[PAGE_SIZE];
+        // The food level of each animal, whether it is female, its
+        // infection status, as in Animal, the disease it caught, the
+        // days it has been infected and the most animals it can infect.
+        final int[] food;
+        final boolean[] female;
+        final byte[] status;
+        final byte[] disease;
+        final int[] infectedDays;
+        final byte[] maxInfection;
+        // The growth, rate of growth and steps grown of each plant.
+        final double[] growth;
+        final double[] growRate;
+        final int[] steps;
+
+        /**
+         * Create a page of free slots.
+         *
+         * @param store The store the page belongs to.
+         * @param first The slot of the first entry of the page.
+         */
+        Page(CreatureStore store, int first)
+        {
+            this.store = store;
+            this.first = first;
+            boolean plants = store.plants;
+            food = plants ? null : new int[PAGE_SIZE];
+            female = plants ? null : new boolean[PAGE_SIZE];
+            status = plants ? null : new byte[PAGE_SIZE];
+            disease = plants ? null : new byte[PAGE_SIZE];
+            infectedDays = plants ? null : new int[PAGE_SIZE];
+            maxInfection = plants ? null : new byte[PAGE_SIZE];
+            growth = plants ? new double[PAGE_SIZE] : null;
+            growRate = plants ? new double[PAGE_SIZE] : null;
+            steps = plants ? new int[PAGE_SIZE] : null;
+        }
+
+        /**
+         * Hand out a slot, with every counter at zero.
+         */
+        void reset(int entry, long id)
+        {
+            ids[entry] = id;
+            locations[entry] = null;
+            live[entry] = true;
+            age[entry] = 0;
+            if(food != null) {
+                food[entry] = 0;
+                female[entry] = false;
+                status[entry] = Animal.HEALTHY;
+                disease[entry] = 0;
+                infectedDays[entry] = 0;
+                maxInfection[entry] = 0;
+            }
+            else {
+                growth[entry] = 0;
+                growRate[entry] = 0;
+                steps[entry] = 0;
+            }
+        }
+
+        /**
+         * @param entry The entry of a living creature.
+         * @return The creature, found at its location in the field.
+         */
+        Life getOwner(int entry)
+        {
+            return (Life) store.field.getObjectAt(locations[entry]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Codes for the ways a creature can die, used when counting deaths.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public final class DeathCause
+{
+    // The creature grew older than its species can live.
+    public static final int AGE = 0;
+    // The creature's food level ran out.
+    public static final int STARVATION = 1;
+    // The creature had nowhere to move to.
+    public static final int OVERCROWDING = 2;
+    // The creature was eaten.
+    public static final int PREDATION = 3;
+    // The creature was killed by a disease.
+    public static final int DISEASE = 4;
+    // Number of causes.
+    public static final int COUNT = 5;
+
+    // Names, indexed by cause.
+    private static final String[] NAMES = {
+        "age", "starvation", "overcrowding", "predation", "disease"
+    };
+
+    /**
+     * DeathCause is not meant to be instantiated.
+     */
+    private DeathCause()
+    {
+    }
+
+    /**
+     * @param cause A cause of death.
+     * @return The name of the cause.
+     */
+    public static String getName(int cause)
+    {
+        return NAMES[cause];
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * The number of occupants of each species in the blocks of a field, at
+ * several levels of detail, for drawing a field too big to be shown
+ * cell by cell. Level k holds blocks of 2^k by 2^k cells; the first
+ * level is that of the blocks counted by Field.countBlocks(), and the
+ * top level has a single block holding the whole field.
+ *
+ * The counts of the first level are set chunk by chunk, for the chunks
+ * that have changed, and the blocks of the other levels holding them
+ * are then worked out again from the level below, so keeping the
+ * counts up to date costs what has changed rather than the size of
+ * the field.
+ *
+ * For each block there are Species.COUNT numbers: the number of
+ * infected animals, then the number of each species by species code.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class DensityMipmap
+{
+    // The first level kept: blocks of Field.BLOCK_SIZE cells.
+    public static final int FIRST_LEVEL = Integer.numberOfTrailingZeros(Field.BLOCK_SIZE);
+
+    // The level holding the whole field in one block.
+    private int topLevel;
+    // The counts of each level, from the first, block by block and
+    // row by row.
+    private int[][] counts;
+    // The number of blocks down and across each level.
+    private int[] blockRows;
+    private int[] blockCols;
+    // The blocks of each level to be worked out again, and whether
+    // each block is among them.
+    private int[][] changed;
+    private int[] changedCount;
+    private boolean[][] isChanged;
+
+    /**
+     * Create the counts of an empty field.
+     *
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public DensityMipmap(int depth, int width)
+    {
+        topLevel = FIRST_LEVEL;
+        while((1 << topLevel) < Math.max(depth, width)) {
+            topLevel++;
+        }
+        int levels = topLevel - FIRST_LEVEL + 1;
+        counts = new int[levels][];
+        blockRows = new int[levels];
+        blockCols = new int[levels];
+        changed = new int[levels][];
+        changedCount = new int[levels];
+        isChanged = new boolean[levels][];
+        for(int i = 0; i < levels; i++) {
+            int size = 1 << (FIRST_LEVEL + i);
+            blockRows[i] = (depth + size - 1) / size;
+            blockCols[i] = (width + size - 1) / size;
+            int blocks = blockRows[i] * blockCols[i];
+            counts[i] = new int[blocks * Species.COUNT];
+            changed[i] = new int[blocks];
+            isChanged[i] = new boolean[blocks];
+        }
+    }
+
+    /**
+     * @return The level holding the whole field in one block.
+     */
+    public int getTopLevel()
+    {
+        return topLevel;
+    }
+
+    /**
+     * Set the counts of the blocks of a chunk of the field, as written
+     * by Field.countBlocks(). The other levels are brought up to date
+     * by update().
+     *
+     * @param chunkRow The row of the chunk among the chunks.
+     * @param chunkCol The column of the chunk among the chunks.
+     * @param source The counts of the chunk.
+     * @param offset Where the counts of the chunk start in source.
+     */
+    public void setChunk(int chunkRow, int chunkCol, int[] source, int offset)
+    {
+        int[] level = counts[0];
+        int firstRow = chunkRow * Field.CHUNK_BLOCKS;
+        int firstCol = chunkCol * Field.CHUNK_BLOCKS;
+        int rows = Math.min(Field.CHUNK_BLOCKS, blockRows[0] - firstRow);
+        int cols = Math.min(Field.CHUNK_BLOCKS, blockCols[0] - firstCol);
+        for(int row = 0; row < rows; row++) {
+            System.arraycopy(source, offset + row * Field.CHUNK_BLOCKS * Species.COUNT,
+                             level, ((firstRow + row) * blockCols[0] + firstCol) * Species.COUNT,
+                             cols * Species.COUNT);
+        }
+        // The blocks of the levels above holding these are marked in
+        // turn as each level is worked out.
+        if(topLevel > FIRST_LEVEL) {
+            for(int row = 0; row < rows; row += 2) {
+                for(int col = 0; col < cols; col += 2) {
+                    markChanged(1, (firstRow + row) >> 1, (firstCol + col) >> 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Work out again the blocks of every level above the first that
+     * hold a chunk set since the last update.
+     */
+    public void update()
+    {
+        for(int i = 1; i < counts.length; i++) {
+            int[] level = counts[i];
+            int[] below = counts[i - 1];
+            int cols = blockCols[i];
+            int belowRows = blockRows[i - 1];
+            int belowCols = blockCols[i - 1];
+            for(int n = 0; n < changedCount[i]; n++) {
+                int block = changed[i][n];
+                isChanged[i][block] = false;
+                int row = block / cols;
+                int col = block - row * cols;
+                int target = block * Species.COUNT;
+                for(int channel = 0; channel < Species.COUNT; channel++) {
+                    level[target + channel] = 0;
+                }
+                for(int childRow = 2 * row; childRow < Math.min(2 * row + 2, belowRows); childRow++) {
+                    for(int childCol = 2 * col; childCol < Math.min(2 * col + 2, belowCols); childCol++) {
+                        int source = (childRow * belowCols + childCol) * Species.COUNT;
+                        for(int channel = 0; channel < Species.COUNT; channel++) {
+                            level[target + channel] += below[source + channel];
+                        }
+                    }
+                }
+                if(i + 1 < counts.length) {
+                    markChanged(i + 1, row >> 1, col >> 1);
+                }
+            }
+            changedCount[i] = 0;
+        }
+    }
+
+    /**
+     * Return the counts of a level, block by block and row by row.
+     *
+     * @param level The level, from FIRST_LEVEL to the top level.
+     * @return The counts, Species.COUNT for each block.
+     */
+    public int[] getCounts(int level)
+    {
+        return counts[level - FIRST_LEVEL];
+    }
+
+    /**
+     * Return where the counts of the block holding a cell start.
+     *
+     * @param level The level, from FIRST_LEVEL to the top level.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The position of the counts in getCounts(level).
+     */
+    public int offsetOf(int level, int row, int col)
+    {
+        return ((row >> level) * blockCols[level - FIRST_LEVEL] + (col >> level)) * Species.COUNT;
+    }
+
+    /**
+     * Mark a block of a level to be worked out again.
+     */
+    private void markChanged(int i, int row, int col)
+    {
+        int block = row * blockCols[i] + col;
+        if(!isChanged[i][block]) {
+            isChanged[i][block] = true;
+            changed[i][changedCount[i]++] = block;
+        }
+    }
+}
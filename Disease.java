@@ -1,60 +1,91 @@
-import java.util.Random;
-import java.util.ArrayList;
-import java.awt.Color; 
-
 /**
- * A collection of diseases that can spread amoung animals.
- * Certain disease can infect certain animals and change their color presented on screen.
+ * A disease that can spread among animals of certain species.
+ * An infected animal dies after a number of days, unless it is cured
+ * first; a cured animal cannot be infected again.
  *
  * @author Leticia Piucco Marques and Ruobing Zhao
  * @version 2020.02.23
  */
 public class Disease
 {
-    // Infection probability of disease PDH.
-    private static final double PDHInfectProb = 0.03;
-    
-    // Collection of animals that can be infected by PDH.
-    private ArrayList<Class> PDHList = new ArrayList<>();
-    
-    private static final Random rand = Randomizer.getRandom();
+    // The name of the disease.
+    private String name;
+    // Probability of an animal it targets being infected in a step.
+    private double infectProbability;
+    // Probability of an infected animal being cured in a step.
+    private double cureProbability;
+    // Number of days after which an infected animal dies.
+    private int lethalDays;
+    // The species it targets, one bit per species code.
+    private int speciesMask;
 
     /**
-     * Create the diseases. A disease can infect certain classes of animal.
+     * Create a disease.
+     *
+     * @param name The name of the disease.
+     * @param infectProbability Probability of infection in a step.
+     * @param cureProbability Probability of being cured in a step.
+     * @param lethalDays Number of days after which an infected animal dies.
+     * @param species The codes of the species it targets.
      */
-    public Disease()
+    public Disease(String name, double infectProbability, double cureProbability,
+                   int lethalDays, byte... species)
     {
-        PDHList.add(Seal.class);
+        this.name = name;
+        this.infectProbability = infectProbability;
+        this.cureProbability = cureProbability;
+        this.lethalDays = lethalDays;
+        for(byte code : species) {
+            speciesMask |= 1 << code;
+        }
     }
-    
+
     /**
-     * One kind of disease can infect certain animal and change its color.
-     * 
-     * @param animal Animal being infected.
-     * @param view Object of SimuloarView.
+     * @return The name of the disease.
      */
-    public void infectAnimal(Animal animal, SimulatorView view)
+    public String getName()
     {
-        Class animalClass = animal.getClass();
-        if(canInfect(animalClass, PDHList, PDHInfectProb)) {
-            animal.beingInfected(); // Change the boolean "infected" in animal to True
-            view.setIndividualColor(animal, Color.BLACK); // Change infected animal's color
-        }
+        return name;
     }
 
     /**
-     * Check whether the disease can infect an animal species or not.
-     * 
-     * @param animalClass Species of the animal being checked.
-     * @param diseaseList Collection of infectable animal species.
-     * @param infectProb Probability of infection.
-     * @return true if disease can infect the animal species.
+     * @return The probability of an animal it targets being infected in a step.
      */
-    private boolean canInfect(Class animalClass, ArrayList<Class> diseaseList, double infectProb)
+    public double getInfectProbability()
     {
-        if(diseaseList.contains(animalClass) && (rand.nextDouble() < infectProb))  {
-            return true;
-        }
-        return false;
+        return infectProbability;
+    }
+
+    /**
+     * @return The probability of an infected animal being cured in a step.
+     */
+    public double getCureProbability()
+    {
+        return cureProbability;
+    }
+
+    /**
+     * @return The number of days after which an infected animal dies.
+     */
+    public int getLethalDays()
+    {
+        return lethalDays;
+    }
+
+    /**
+     * @return The species targeted, one bit per species code.
+     */
+    public int getSpeciesMask()
+    {
+        return speciesMask;
+    }
+
+    /**
+     * @param species A species code.
+     * @return true if the disease can infect the species.
+     */
+    public boolean targets(byte species)
+    {
+        return (speciesMask & (1 << species)) != 0;
     }
 }
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The diseases that can spread among the animals of a simulation.
+ * Several diseases can be going round at the same time, but an animal
+ * only ever catches one of them.
+ *
+ * Each step an animal that has never been ill makes a single draw,
+ * whatever the number of diseases, which is compared against the
+ * infection probabilities of the diseases of its species laid end to
+ * end. Species that no disease targets make no draw at all.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class DiseaseRegistry
+{
+    // The registered diseases, indexed by id.
+    private List<Disease> diseases;
+    // The species targeted by any disease, one bit per species code.
+    private int targetMask;
+    // For each species, the ids of the diseases targeting it, and the
+    // running total of their infection probabilities.
+    private byte[][] candidates;
+    private double[][] limits;
+
+    /**
+     * Create a registry with no diseases.
+     */
+    public DiseaseRegistry()
+    {
+        diseases = new ArrayList<>();
+        candidates = new byte[Species.COUNT][0];
+        limits = new double[Species.COUNT][0];
+    }
+
+    /**
+     * Create a copy of another registry.
+     *
+     * @param other The registry to copy.
+     */
+    public DiseaseRegistry(DiseaseRegistry other)
+    {
+        this();
+        for(Disease disease : other.diseases) {
+            register(disease);
+        }
+    }
+
+    /**
+     * Create the registry of the usual simulation, in which PDH
+     * (phocine distemper) goes round among the seals, if the species
+     * table has seals.
+     *
+     * @return The registry.
+     */
+    public static DiseaseRegistry createDefault()
+    {
+        DiseaseRegistry registry = new DiseaseRegistry();
+        byte seal = Species.getCode("Seal");
+        if(seal != Species.EMPTY) {
+            registry.register(new Disease("PDH", 0.03, 0.08, 5, seal));
+        }
+        return registry;
+    }
+
+    /**
+     * Add a disease.
+     *
+     * @param disease The disease to add.
+     * @return The id of the disease.
+     */
+    public byte register(Disease disease)
+    {
+        if(diseases.size() > Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many diseases");
+        }
+        byte id = (byte) diseases.size();
+        diseases.add(disease);
+        targetMask |= disease.getSpeciesMask();
+        for(byte species = 1; species < Species.COUNT; species++) {
+            if(disease.targets(species)) {
+                int count = candidates[species].length;
+                double total = count == 0 ? 0 : limits[species][count - 1];
+                candidates[species] = Arrays.copyOf(candidates[species], count + 1);
+                limits[species] = Arrays.copyOf(limits[species], count + 1);
+                candidates[species][count] = id;
+                limits[species][count] = total + disease.getInfectProbability();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @param id The id of a registered disease.
+     * @return The disease.
+     */
+    public Disease get(byte id)
+    {
+        return diseases.get(id);
+    }
+
+    /**
+     * @return The number of registered diseases.
+     */
+    public int size()
+    {
+        return diseases.size();
+    }
+
+    /**
+     * @param species A species code.
+     * @return true if any disease can infect the species.
+     */
+    public boolean targets(byte species)
+    {
+        return (targetMask & (1 << species)) != 0;
+    }
+
+    /**
+     * Possibly infect an animal with one of the diseases of its species.
+     * Animals that are ill or have been cured are not infected again.
+     *
+     * @param animal The animal that may be infected.
+     */
+    public void infectAnimal(Animal animal)
+    {
+        byte species = animal.getSpecies();
+        if(!targets(species) || !animal.canBeInfected()) {
+            return;
+        }
+        double[] speciesLimits = limits[species];
+        double draw = animal.nextDouble(Randomizer.INFECTION);
+        if(draw >= speciesLimits[speciesLimits.length - 1]) {
+            return;
+        }
+        int i = 0;
+        while(draw >= speciesLimits[i]) {
+            i++;
+        }
+        animal.beingInfected(candidates[species][i]);
+    }
+}
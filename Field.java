@@ -1,47 +1,198 @@
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal or plant.
  * 
+ * The field is divided into square chunks of CHUNK_SIZE cells a side,
+ * and a chunk is only allocated once something is placed in it. Empty
+ * chunks are released by releaseEmptyChunks(), which the simulator
+ * calls between steps, so the memory used grows with the occupied
+ * area of the field rather than its size. Each chunk keeps its cells
+ * in flat arrays, alongside a plane holding the species code of each
+ * occupant.
+ * 
+ * A cell can also be given by its packed index, row * width + col,
+ * which is a long so that fields of more than 2^31 cells can be
+ * addressed. The packed cell can be used in place of a Location, and
+ * the field hands out one shared Location per occupied cell.
+ * 
+ * Addressing is not what limits the size of a field in practice,
+ * memory is. The simulator populates every cell with its own draws,
+ * and at the usual density about a third of the cells are filled, so
+ * a freshly populated field takes about 37 bytes of heap per cell in
+ * all, creatures included: some 27 million cells, or 5,000 by 5,000,
+ * to the gigabyte. The view, which copies the field into arrays with
+ * copySpecies() and copyStatus(), is further limited to 2^31 cells.
+ * The number of occupants of each species is kept up to date as
+ * cells are filled and cleared.
+ * 
+ * For each species the field also keeps an occupancy bitplane, one
+ * bit per cell, and one more plane marks female animals. A row of a
+ * chunk is one word of each plane. Looking for prey or a mate around
+ * a cell then takes a few word operations that give the matching
+ * directions as a mask, reading the neighbouring chunks when the cell
+ * lies on the edge of its own. Bits are set and cleared atomically,
+ * since cells of neighbouring tiles can share a word when the tiles
+ * are updated at the same time.
+ * 
  * @author Leticia Piucco Marques and Ruobing Zhao.
  * @version 2020.02.23
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();  
+    // The number of cells adjacent to a cell in the middle of the field.
+    public static final int NEIGHBOURS = 8;
+    // The side of a chunk, in cells. A row of a chunk fills one word
+    // of a bitplane.
+    public static final int CHUNK_SIZE = 64;
+    // The side of the blocks the occupants of a chunk are counted in
+    // by countBlocks(), in cells, and the number of blocks across a chunk.
+    public static final int BLOCK_SIZE = 8;
+    public static final int CHUNK_BLOCKS = CHUNK_SIZE / BLOCK_SIZE;
+    // Row and column offsets of the adjacent cells, indexed by direction.
+    private static final int[] ROW_OFFSETS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] COL_OFFSETS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    // Every ordering of the eight directions, stored NEIGHBOURS bytes apiece.
+    private static final byte[] ORDERINGS = createOrderings();
+    // The number of orderings held in ORDERINGS (8!).
+    private static final int ORDERING_COUNT = ORDERINGS.length / NEIGHBOURS;
+    // Shift and mask taking a row or column to its chunk and back.
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The cells of a chunk.
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    // The bits of one block in a row of a bitplane.
+    private static final long BLOCK_MASK = (1L << BLOCK_SIZE) - 1;
+    // The bitplane of female animals, after those of each species.
+    private static final int FEMALES = Species.COUNT;
+    // Atomic access to the words of the bitplanes.
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    // Access to the chunks, which may be allocated by any thread.
+    private static final VarHandle CHUNKS = MethodHandles.arrayElementVarHandle(Chunk[].class);
+
+    // The source of random numbers for the occupants of the field.
+    private Randomizer randomizer;
+    // The parameters of the simulation, shared by the occupants.
+    private SimulationParameters parameters;
+    // The counters of births, deaths and infections in the field.
+    private SimulationMetrics metrics;
+    // A random number generator for the list-building helpers, which
+    // are not called on behalf of any one occupant.
+    private Random rand;
     // The depth and width of the field.
     private int depth, width;
-    // Storage for the animals.
-    private Object[][] field;
+    // The number of chunks down and across the field.
+    private int chunkRows, chunkCols;
+    // The chunks of the field, row by row, or null where a chunk
+    // holds nothing.
+    private Chunk[] chunks;
+    // The chunks allocated, in no particular order.
+    private List<Chunk> allocated;
+    // The number of chunks ever allocated.
+    private int generations;
+    // The number of occupants of each species. Striped counters, as
+    // the tiles of the field may be updated by several threads.
+    private LongAdder[] counts;
+    // The counters of the creatures of each species, by species code.
+    private CreatureStore[] stores;
 
     /**
-     * Represent a field of the given dimensions.
+     * Represent a field of the given dimensions, using the default seed.
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width)
+    {
+        this(depth, width, new Randomizer(Randomizer.SEED));
+    }
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param randomizer The source of random numbers for the occupants.
+     */
+    public Field(int depth, int width, Randomizer randomizer)
+    {
+        this(depth, width, randomizer, new SimulationParameters());
+    }
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param randomizer The source of random numbers for the occupants.
+     * @param parameters The parameters of the simulation in the field.
+     */
+    public Field(int depth, int width, Randomizer randomizer, SimulationParameters parameters)
     {
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        this.randomizer = randomizer;
+        this.parameters = parameters;
+        metrics = new SimulationMetrics();
+        rand = new Random(randomizer.getSeed());
+        chunkRows = (depth + CHUNK_MASK) >> CHUNK_BITS;
+        chunkCols = (width + CHUNK_MASK) >> CHUNK_BITS;
+        chunks = new Chunk[chunkRows * chunkCols];
+        allocated = new ArrayList<>();
+        counts = new LongAdder[Species.COUNT];
+        stores = new CreatureStore[Species.COUNT];
+        for(int code = 0; code < Species.COUNT; code++) {
+            counts[code] = new LongAdder();
+            stores[code] = new CreatureStore((byte) code, this);
+        }
     }
     
     /**
      * Empty the field.
      */
-    public void clear()
+    public synchronized void clear()
     {
-        for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
+        Arrays.fill(chunks, null);
+        allocated.clear();
+        for(LongAdder count : counts) {
+            count.reset();
+        }
+        for(CreatureStore store : stores) {
+            store.clear();
+        }
+    }
+
+    /**
+     * Release the chunks that hold nothing. Must not be called while
+     * the field is being changed by other threads.
+     */
+    public synchronized void releaseEmptyChunks()
+    {
+        int kept = 0;
+        for(int i = 0; i < allocated.size(); i++) {
+            Chunk chunk = allocated.get(i);
+            if(chunk.occupants.get() == 0) {
+                chunks[chunk.index] = null;
+            }
+            else {
+                allocated.set(kept++, chunk);
             }
         }
+        allocated.subList(kept, allocated.size()).clear();
+    }
+
+    /**
+     * @return The number of chunks allocated, which is what the
+     *         memory used by the field grows with.
+     */
+    public synchronized int getChunkCount()
+    {
+        return allocated.size();
     }
     
     /**
@@ -50,7 +201,33 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        clear(location.getRow(), location.getCol());
+    }
+
+    /**
+     * Clear the given cell.
+     * @param index The packed cell to clear.
+     */
+    public void clear(long index)
+    {
+        clear(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Clear the cell at the given row and column.
+     */
+    private void clear(int row, int col)
+    {
+        Chunk chunk = chunkAt(row, col);
+        if(chunk == null) {
+            return;
+        }
+        int cell = cellIn(row, col);
+        vacate(chunk, cell);
+        chunk.changes++;
+        chunk.cells[cell] = null;
+        chunk.species[cell] = Species.EMPTY;
+        chunk.status[cell] = Animal.HEALTHY;
     }
     
     /**
@@ -61,9 +238,24 @@ public class Field
      * @param row Row coordinate of the location.
      * @param col Column coordinate of the location.
      */
-    public void place(Object object, int row, int col)
+    public void place(Object animal, int row, int col)
     {
-        place(object, new Location(row, col));
+        byte code = animal == null ? Species.EMPTY : ((Life) animal).getSpecies();
+        Chunk chunk = code == Species.EMPTY ? chunkAt(row, col) : chunkFor(row, col);
+        if(chunk == null) {
+            return;
+        }
+        int cell = cellIn(row, col);
+        vacate(chunk, cell);
+        chunk.changes++;
+        chunk.cells[cell] = animal;
+        chunk.species[cell] = code;
+        chunk.status[cell] = Animal.HEALTHY;
+        if(code != Species.EMPTY) {
+            counts[code].increment();
+            setBit(chunk.planes[code], cell);
+            chunk.occupants.incrementAndGet();
+        }
     }
     
     /**
@@ -75,7 +267,76 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, location.getRow(), location.getCol());
+    }
+
+    /**
+     * Place an animal in the given cell.
+     * If there is already an animal in the cell it will
+     * be lost.
+     * @param animal The animal to be placed.
+     * @param index The packed cell to place it in.
+     */
+    public void place(Object animal, long index)
+    {
+        place(animal, rowOf(index), colOf(index));
+    }
+
+    /**
+     * Move an animal from one location to another, leaving the counts
+     * of each species unchanged. The destination should be free.
+     * @param animal The animal to be moved.
+     * @param from The location the animal leaves.
+     * @param to The location the animal moves to.
+     */
+    public void move(Object animal, Location from, Location to)
+    {
+        int fromRow = from.getRow();
+        int fromCol = from.getCol();
+        int toRow = to.getRow();
+        int toCol = to.getCol();
+        if(fromRow == toRow && fromCol == toCol) {
+            return;
+        }
+        Chunk source = chunkAt(fromRow, fromCol);
+        Chunk target = chunkFor(toRow, toCol);
+        int sourceCell = cellIn(fromRow, fromCol);
+        int targetCell = cellIn(toRow, toCol);
+        vacate(target, targetCell);
+        target.changes++;
+        byte code = Species.EMPTY;
+        byte state = Animal.HEALTHY;
+        if(source != null) {
+            code = source.species[sourceCell];
+            state = source.status[sourceCell];
+            if(code != Species.EMPTY) {
+                clearBit(source.planes[code], sourceCell);
+                setBit(target.planes[code], targetCell);
+                if(isBitSet(source.planes[FEMALES], sourceCell)) {
+                    clearBit(source.planes[FEMALES], sourceCell);
+                    setBit(target.planes[FEMALES], targetCell);
+                }
+                target.occupants.incrementAndGet();
+                source.occupants.decrementAndGet();
+            }
+            source.changes++;
+            source.cells[sourceCell] = null;
+            source.species[sourceCell] = Species.EMPTY;
+            source.status[sourceCell] = Animal.HEALTHY;
+        }
+        target.cells[targetCell] = animal;
+        target.species[targetCell] = code;
+        target.status[targetCell] = state;
+    }
+
+    /**
+     * Return the number of occupants of the given species.
+     * @param code The species code.
+     * @return How many cells hold that species.
+     */
+    public int getCount(int code)
+    {
+        return counts[code].intValue();
     }
     
     /**
@@ -96,21 +357,516 @@ public class Field
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        Chunk chunk = chunkAt(row, col);
+        return chunk == null ? null : chunk.cells[cellIn(row, col)];
+    }
+
+    /**
+     * Return the animal in the given cell, if any.
+     * @param index The packed cell.
+     * @return The animal in the cell, or null if there is none.
+     */
+    public Object getObjectAt(long index)
+    {
+        return getObjectAt(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Return the species code of the occupant of the given cell.
+     * @param index The packed cell.
+     * @return The species code, or Species.EMPTY if the cell is free.
+     */
+    public byte getSpeciesAt(long index)
+    {
+        return getSpeciesAt(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Copy the species code of every cell, in packed cell order.
+     * Only meant for fields small enough to be shown whole.
+     * @param target An array of at least depth * width codes.
+     */
+    public void copySpecies(byte[] target)
+    {
+        copyPlane(target, false);
+    }
+
+    /**
+     * Record the infection status of the occupant of a location.
+     * The status moves with the occupant and is reset when the
+     * location is cleared or given a new occupant.
+     * @param location The location of the occupant.
+     * @param code The status, one of the codes defined in Animal.
+     */
+    public void setStatus(Location location, byte code)
+    {
+        Chunk chunk = chunkAt(location.getRow(), location.getCol());
+        if(chunk != null) {
+            chunk.changes++;
+            chunk.status[cellIn(location.getRow(), location.getCol())] = code;
+        }
+    }
+
+    /**
+     * Return the infection status of the occupant of the given cell.
+     * @param index The packed cell.
+     * @return The status, one of the codes defined in Animal.
+     */
+    public byte getStatusAt(long index)
+    {
+        int row = rowOf(index);
+        int col = colOf(index);
+        Chunk chunk = chunkAt(row, col);
+        return chunk == null ? Animal.HEALTHY : chunk.status[cellIn(row, col)];
+    }
+
+    /**
+     * Copy the infection status of every cell, in packed cell order.
+     * Only meant for fields small enough to be shown whole.
+     * @param target An array of at least depth * width codes.
+     */
+    public void copyStatus(byte[] target)
+    {
+        copyPlane(target, true);
+    }
+
+    /**
+     * Copy the species code and infection status of every stride-th
+     * cell of a region of the field, row by row. Must not be called
+     * while the field is being changed by other threads.
+     * @param top The first row of the region.
+     * @param left The first column of the region.
+     * @param rows The number of rows copied.
+     * @param cols The number of columns copied.
+     * @param stride The rows and columns from one cell copied to the next.
+     * @param species An array of at least rows * cols codes.
+     * @param status An array of at least rows * cols codes.
+     */
+    public void copyRegion(int top, int left, int rows, int cols, int stride,
+                           byte[] species, byte[] status)
+    {
+        int index = 0;
+        for(int i = 0; i < rows; i++) {
+            int row = top + i * stride;
+            for(int j = 0; j < cols; j++) {
+                int col = left + j * stride;
+                Chunk chunk = chunkAt(row, col);
+                if(chunk == null) {
+                    species[index] = Species.EMPTY;
+                    status[index] = Animal.HEALTHY;
+                }
+                else {
+                    int cell = cellIn(row, col);
+                    species[index] = chunk.species[cell];
+                    status[index] = chunk.status[cell];
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of chunks down the field.
+     */
+    public int getChunkRows()
+    {
+        return chunkRows;
+    }
+
+    /**
+     * @return The number of chunks across the field.
+     */
+    public int getChunkColumns()
+    {
+        return chunkCols;
+    }
+
+    /**
+     * Return a number that changes whenever anything in a chunk does,
+     * so that what is drawn from the chunk can be kept up to date.
+     * @param chunkRow The row of the chunk among the chunks.
+     * @param chunkCol The column of the chunk among the chunks.
+     * @return The version of the chunk, or 0 while nothing is in it.
+     */
+    public long getChunkVersion(int chunkRow, int chunkCol)
+    {
+        Chunk chunk = (Chunk) CHUNKS.getAcquire(chunks, chunkRow * chunkCols + chunkCol);
+        if(chunk == null) {
+            return 0;
+        }
+        return (long) chunk.generation << 32 | (chunk.changes & 0xffffffffL);
+    }
+
+    /**
+     * Count the occupants of a chunk in each of its blocks of
+     * BLOCK_SIZE by BLOCK_SIZE cells. For each block, row by row, there
+     * are Species.COUNT numbers: the number of infected animals, and
+     * the number of occupants of each species by species code. Must
+     * not be called while the field is being changed by other threads.
+     * @param chunkRow The row of the chunk among the chunks.
+     * @param chunkCol The column of the chunk among the chunks.
+     * @param counts An array of at least CHUNK_BLOCKS * CHUNK_BLOCKS
+     *               * Species.COUNT numbers.
+     * @param offset Where the counts of the chunk start in the array.
+     */
+    public void countBlocks(int chunkRow, int chunkCol, int[] counts, int offset)
+    {
+        Arrays.fill(counts, offset, offset + CHUNK_BLOCKS * CHUNK_BLOCKS * Species.COUNT, 0);
+        Chunk chunk = chunks[chunkRow * chunkCols + chunkCol];
+        if(chunk == null) {
+            return;
+        }
+        for(int code = 1; code < Species.COUNT; code++) {
+            long[] words = chunk.planes[code];
+            for(int row = 0; row < CHUNK_SIZE; row++) {
+                long word = words[row];
+                int block = offset + row / BLOCK_SIZE * CHUNK_BLOCKS * Species.COUNT + code;
+                while(word != 0) {
+                    counts[block] += Long.bitCount(word & BLOCK_MASK);
+                    word >>>= BLOCK_SIZE;
+                    block += Species.COUNT;
+                }
+            }
+        }
+        byte[] status = chunk.status;
+        for(int cell = 0; cell < CHUNK_CELLS; cell++) {
+            if(status[cell] == Animal.INFECTED) {
+                int block = (cell >> CHUNK_BITS) / BLOCK_SIZE * CHUNK_BLOCKS
+                            + (cell & CHUNK_MASK) / BLOCK_SIZE;
+                counts[offset + block * Species.COUNT]++;
+            }
+        }
+    }
+
+    /**
+     * Return the packed cell of a location, for the methods taking one.
+     * @param location A location within the field.
+     * @return The packed cell, row * width + col.
+     */
+    public long cellOf(Location location)
+    {
+        return (long) location.getRow() * width + location.getCol();
+    }
+
+    /**
+     * Return the shared Location of a cell.
+     * @param index The packed cell.
+     * @return The location of the cell.
+     */
+    public Location locationOf(long index)
+    {
+        return locationAt(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Return the shared Location of a cell. Locations are shared
+     * while the chunk of the cell is allocated; a cell in an empty
+     * chunk is given a new Location every time.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The location of the cell.
+     */
+    public Location locationAt(int row, int col)
+    {
+        Chunk chunk = chunkAt(row, col);
+        if(chunk == null) {
+            return new Location(row, col);
+        }
+        int cell = cellIn(row, col);
+        Location location = chunk.locations[cell];
+        if(location == null) {
+            // Locations are immutable, so if two threads race to create
+            // one, either copy is as good as the other.
+            location = new Location(row, col);
+            chunk.locations[cell] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Return the species code of the occupant of the given cell.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The species code, or Species.EMPTY if the cell is free.
+     */
+    public byte getSpeciesAt(int row, int col)
+    {
+        Chunk chunk = chunkAt(row, col);
+        return chunk == null ? Species.EMPTY : chunk.species[cellIn(row, col)];
+    }
+
+    /**
+     * Check whether the given location holds no animal or plant.
+     * @param location Where in the field.
+     * @return true if the location is free.
+     */
+    public boolean isFree(Location location)
+    {
+        return getSpeciesAt(location.getRow(), location.getCol()) == Species.EMPTY;
     }
     
+    /**
+     * @return The source of random numbers for the occupants of the field.
+     */
+    public Randomizer getRandomizer()
+    {
+        return randomizer;
+    }
+
+    /**
+     * @return The parameters of the simulation in the field.
+     */
+    public SimulationParameters getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * Return the store keeping the counters of a species. Creatures
+     * created in the field are given a slot in it.
+     * @param code The species code.
+     * @return The store of the species.
+     */
+    public CreatureStore getStore(byte code)
+    {
+        return stores[code];
+    }
+
+    /**
+     * @return The metrics of the simulation in the field, where the
+     *         occupants count their deaths and infections.
+     */
+    public SimulationMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Pick one of the orderings of the adjacent cells at random.
+     * Every ordering is equally likely, so visiting the directions
+     * of the returned ordering is equivalent to visiting a shuffled
+     * list of the adjacent locations.
+     * @param entity The id of the occupant asking for the ordering.
+     * @param purpose What the ordering is used for, from Randomizer.
+     * @return An ordering, to be passed to direction().
+     */
+    public int randomOrdering(long entity, int purpose)
+    {
+        return randomizer.nextInt(entity, purpose, ORDERING_COUNT) * NEIGHBOURS;
+    }
+
+    /**
+     * Pick one of the orderings of the adjacent cells from the field's
+     * own generator, for callers that are not occupants of the field.
+     * @return An ordering, to be passed to direction().
+     */
+    private int randomOrdering()
+    {
+        return rand.nextInt(ORDERING_COUNT) * NEIGHBOURS;
+    }
+
+    /**
+     * Return one direction of an ordering of the adjacent cells.
+     * @param ordering An ordering returned by randomOrdering().
+     * @param i The position within the ordering, from 0 to NEIGHBOURS - 1.
+     * @return A direction, from 0 to NEIGHBOURS - 1.
+     */
+    public static int direction(int ordering, int i)
+    {
+        return ORDERINGS[ordering + i];
+    }
+
+    /**
+     * Check whether the cell in the given direction lies within the grid.
+     * @param location The location to look from.
+     * @param direction The direction to look in.
+     * @return true if the adjacent cell is inside the field.
+     */
+    public boolean hasAdjacent(Location location, int direction)
+    {
+        int row = location.getRow() + ROW_OFFSETS[direction];
+        int col = location.getCol() + COL_OFFSETS[direction];
+        return row >= 0 && row < depth && col >= 0 && col < width;
+    }
+
+    /**
+     * Return the animal in the cell in the given direction, if any.
+     * @param location The location to look from.
+     * @param direction The direction to look in.
+     * @return The animal in the adjacent cell, or null if there is none
+     *         or the cell lies outside the field.
+     */
+    public Object getAdjacentObject(Location location, int direction)
+    {
+        int row = location.getRow() + ROW_OFFSETS[direction];
+        int col = location.getCol() + COL_OFFSETS[direction];
+        if(row >= 0 && row < depth && col >= 0 && col < width) {
+            return getObjectAt(row, col);
+        }
+        return null;
+    }
+
+    /**
+     * Check whether the cell in the given direction is inside the field and free.
+     * @param location The location to look from.
+     * @param direction The direction to look in.
+     * @return true if the adjacent cell can be moved into.
+     */
+    public boolean isAdjacentFree(Location location, int direction)
+    {
+        int row = location.getRow() + ROW_OFFSETS[direction];
+        int col = location.getCol() + COL_OFFSETS[direction];
+        return row >= 0 && row < depth && col >= 0 && col < width
+               && getSpeciesAt(row, col) == Species.EMPTY;
+    }
+
+    /**
+     * Mark the animal at a location as female or not. The mark moves
+     * with the animal and is removed when the location is cleared or
+     * given a new occupant.
+     * @param location The location of the animal.
+     * @param female true if the animal is female.
+     */
+    public void setFemale(Location location, boolean female)
+    {
+        Chunk chunk = chunkAt(location.getRow(), location.getCol());
+        if(chunk == null) {
+            return;
+        }
+        int cell = cellIn(location.getRow(), location.getCol());
+        if(female) {
+            setBit(chunk.planes[FEMALES], cell);
+        }
+        else {
+            clearBit(chunk.planes[FEMALES], cell);
+        }
+    }
+
+    /**
+     * Find the adjacent cells that hold the given species.
+     * @param location The location to look from.
+     * @param code The species code to look for.
+     * @return A mask with bit d set if the cell in direction d holds
+     *         the species.
+     */
+    public int getNeighbourMask(Location location, byte code)
+    {
+        return neighbourBits(code, location.getRow(), location.getCol());
+    }
+
+    /**
+     * Find the adjacent cells that hold a possible mate: an animal of
+     * the given species and of the other sex.
+     * @param location The location to look from.
+     * @param code The species code of the animal looking.
+     * @param female true if the animal looking is female.
+     * @return A mask with bit d set if the cell in direction d holds a mate.
+     */
+    public int getMateMask(Location location, byte code, boolean female)
+    {
+        int row = location.getRow();
+        int col = location.getCol();
+        int sameSpecies = neighbourBits(code, row, col);
+        int femaleNeighbours = neighbourBits(FEMALES, row, col);
+        return female ? sameSpecies & ~femaleNeighbours : sameSpecies & femaleNeighbours;
+    }
+
+    /**
+     * Return the first direction of an ordering that is set in a mask.
+     * With a random ordering this picks one of the directions at random.
+     * @param mask A mask of directions, one bit per direction.
+     * @param ordering An ordering returned by randomOrdering().
+     * @return A direction set in the mask, or -1 if the mask is empty.
+     */
+    public static int firstDirection(int mask, int ordering)
+    {
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            int direction = ORDERINGS[ordering + i];
+            if((mask >>> direction & 1) != 0) {
+                return direction;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check the bitplanes and the number of occupants of every chunk
+     * against the species and occupants of its cells, and that only
+     * the chunks listed as allocated are in use. This visits every
+     * allocated cell, so it is meant for assertions.
+     * @return true if every bit and count agrees with the cells.
+     */
+    public synchronized boolean hasConsistentPlanes()
+    {
+        int inUse = 0;
+        for(Chunk chunk : chunks) {
+            if(chunk != null) {
+                inUse++;
+            }
+        }
+        if(inUse != allocated.size()) {
+            return false;
+        }
+        for(Chunk chunk : allocated) {
+            if(chunks[chunk.index] != chunk) {
+                return false;
+            }
+            int occupants = 0;
+            for(int cell = 0; cell < CHUNK_CELLS; cell++) {
+                byte code = chunk.species[cell];
+                if(code != Species.EMPTY) {
+                    occupants++;
+                }
+                for(int plane = 1; plane < Species.COUNT; plane++) {
+                    if(isBitSet(chunk.planes[plane], cell) != (code == plane)) {
+                        return false;
+                    }
+                }
+                Object occupant = chunk.cells[cell];
+                boolean female = occupant instanceof Animal && ((Animal) occupant).isFemale();
+                if(isBitSet(chunk.planes[FEMALES], cell) != female) {
+                    return false;
+                }
+            }
+            if(occupants != chunk.occupants.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the location of the cell in the given direction.
+     * The caller must check that the cell lies within the field.
+     * @param location The location to look from.
+     * @param direction The direction to look in.
+     * @return The adjacent location.
+     */
+    public Location adjacentLocation(Location location, int direction)
+    {
+        return locationAt(location.getRow() + ROW_OFFSETS[direction],
+                          location.getCol() + COL_OFFSETS[direction]);
+    }
+
     /**
      * Generate a random location that is adjacent to the
-     * given location, or is the same location.
+     * given location.
      * The returned location will be within the valid bounds
      * of the field.
      * @param location The location from which to generate an adjacency.
-     * @return A valid location within the grid area.
+     * @return A valid location within the grid area, or null if
+     *         the field has no cell next to the location.
      */
     public Location randomAdjacentLocation(Location location)
     {
-        List<Location> adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        int ordering = randomOrdering();
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            int direction = direction(ordering, i);
+            if(hasAdjacent(location, direction)) {
+                return adjacentLocation(location, direction);
+            }
+        }
+        return null;
     }
     
     /**
@@ -120,11 +876,12 @@ public class Field
      */
     public List<Location> getFreeAdjacentLocations(Location location)
     {
-        List<Location> free = new LinkedList<>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
+        List<Location> free = new ArrayList<>(NEIGHBOURS);
+        int ordering = randomOrdering();
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            int direction = direction(ordering, i);
+            if(isAdjacentFree(location, direction)) {
+                free.add(adjacentLocation(location, direction));
             }
         }
         return free;
@@ -140,20 +897,34 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
-        }
-        else {
-            return null;
+        return freeAdjacentLocation(location, randomOrdering());
+    }
+
+    /**
+     * Find the first free location adjacent to the given location,
+     * visiting the adjacent cells in the given order.
+     * If there is none, return null.
+     * @param location The location from which to generate an adjacency.
+     * @param ordering An ordering returned by randomOrdering().
+     * @return A valid location within the grid area.
+     */
+    public Location freeAdjacentLocation(Location location, int ordering)
+    {
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            int direction = direction(ordering, i);
+            if(isAdjacentFree(location, direction)) {
+                return adjacentLocation(location, direction);
+            }
         }
+        return null;
     }
 
     /**
      * Return a shuffled list of locations adjacent to the given one.
      * The list will not include the location itself.
      * All locations will lie within the grid.
+     * Hot paths should visit the directions of randomOrdering()
+     * instead, which does not allocate.
      * @param location The location from which to generate adjacencies.
      * @return A list of locations adjacent to that given.
      */
@@ -161,26 +932,15 @@ public class Field
     {
         assert location != null : "Null location passed to adjacentLocations";
         // The list of locations to be returned.
-        List<Location> locations = new LinkedList<>();
+        List<Location> locations = new ArrayList<>(NEIGHBOURS);
         if(location != null) {
-            int row = location.getRow();
-            int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
+            int ordering = randomOrdering();
+            for(int i = 0; i < NEIGHBOURS; i++) {
+                int direction = direction(ordering, i);
+                if(hasAdjacent(location, direction)) {
+                    locations.add(adjacentLocation(location, direction));
                 }
             }
-            
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
         }
         return locations;
     }
@@ -202,4 +962,302 @@ public class Field
     {
         return width;
     }
+
+    /**
+     * Return the chunk holding a cell, if it is allocated.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The chunk, or null if nothing is in it.
+     */
+    private Chunk chunkAt(int row, int col)
+    {
+        return (Chunk) CHUNKS.getAcquire(chunks, (row >> CHUNK_BITS) * chunkCols + (col >> CHUNK_BITS));
+    }
+
+    /**
+     * Return the chunk holding a cell, allocating it if need be.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The chunk.
+     */
+    private Chunk chunkFor(int row, int col)
+    {
+        Chunk chunk = chunkAt(row, col);
+        if(chunk == null) {
+            chunk = allocate((row >> CHUNK_BITS) * chunkCols + (col >> CHUNK_BITS));
+        }
+        return chunk;
+    }
+
+    /**
+     * Allocate a chunk, unless another thread just has.
+     * @param index The position of the chunk in chunks.
+     * @return The chunk.
+     */
+    private synchronized Chunk allocate(int index)
+    {
+        Chunk chunk = chunks[index];
+        if(chunk == null) {
+            chunk = new Chunk(index, ++generations);
+            allocated.add(chunk);
+            CHUNKS.setRelease(chunks, index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Remove the occupant of a cell from the counts and bitplanes,
+     * ready for the cell to be given another occupant or none.
+     * @param chunk The chunk holding the cell.
+     * @param cell The cell within the chunk.
+     */
+    private void vacate(Chunk chunk, int cell)
+    {
+        byte code = chunk.species[cell];
+        if(code != Species.EMPTY) {
+            counts[code].decrement();
+            clearBit(chunk.planes[code], cell);
+            clearBit(chunk.planes[FEMALES], cell);
+            chunk.occupants.decrementAndGet();
+        }
+    }
+
+    /**
+     * Copy the species or status of every cell, in packed cell order.
+     * @param target An array of at least depth * width codes.
+     * @param status true to copy the status, false the species.
+     */
+    private void copyPlane(byte[] target, boolean status)
+    {
+        if((long) depth * width > target.length) {
+            throw new IllegalArgumentException("The field has " + (long) depth * width
+                                               + " cells, more than the array can hold");
+        }
+        for(int row = 0; row < depth; row++) {
+            // Fits in an int, as the whole field fits in the array.
+            int offset = (int) ((long) row * width);
+            for(int col = 0; col < width; col += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, width - col);
+                Chunk chunk = chunkAt(row, col);
+                if(chunk == null) {
+                    Arrays.fill(target, offset + col, offset + col + length, (byte) 0);
+                }
+                else {
+                    byte[] source = status ? chunk.status : chunk.species;
+                    System.arraycopy(source, cellIn(row, col), target, offset + col, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The row of a packed cell.
+     */
+    private int rowOf(long index)
+    {
+        return (int) (index / width);
+    }
+
+    /**
+     * @return The column of a packed cell.
+     */
+    private int colOf(long index)
+    {
+        return (int) (index % width);
+    }
+
+    /**
+     * Return the position of a cell in the arrays of its chunk, which
+     * is also its bit in the bitplanes of the chunk.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The index of the cell within its chunk.
+     */
+    private static int cellIn(int row, int col)
+    {
+        return (row & CHUNK_MASK) << CHUNK_BITS | (col & CHUNK_MASK);
+    }
+
+    /**
+     * Collect the bits of the eight cells around a cell.
+     * @param plane The bitplane to read: a species code, or FEMALES.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return A mask with bit d set if the cell in direction d is set.
+     */
+    private int neighbourBits(int plane, int row, int col)
+    {
+        int localRow = row & CHUNK_MASK;
+        int localCol = col & CHUNK_MASK;
+        int above, level, below;
+        if(localRow > 0 && localRow < CHUNK_MASK && localCol > 0 && localCol < CHUNK_MASK) {
+            // The eight cells lie in the chunk of the cell. Cells past
+            // the edge of the field are never set, so need no check.
+            Chunk chunk = chunkAt(row, col);
+            if(chunk == null) {
+                return 0;
+            }
+            long[] words = chunk.planes[plane];
+            int shift = localCol - 1;
+            above = (int) ((long) WORDS.getOpaque(words, localRow - 1) >>> shift) & 7;
+            level = (int) ((long) WORDS.getOpaque(words, localRow) >>> shift) & 7;
+            below = (int) ((long) WORDS.getOpaque(words, localRow + 1) >>> shift) & 7;
+        }
+        else {
+            above = threeBits(plane, row - 1, col);
+            level = threeBits(plane, row, col);
+            below = threeBits(plane, row + 1, col);
+        }
+        // Directions 0-2 are above, 3 and 4 left and right, 5-7 below.
+        return above | (level & 1) << 3 | (level >>> 2) << 4 | below << 5;
+    }
+
+    /**
+     * Read the bits of three cells of a row, around a column, which
+     * may lie in different chunks. The words can be changed by other
+     * threads at the same time, but never the bits read here.
+     * @param plane The bitplane to read.
+     * @param row The row of the cells.
+     * @param col The column of the middle cell.
+     * @return The three bits, the leftmost one lowest.
+     */
+    private int threeBits(int plane, int row, int col)
+    {
+        if(row < 0 || row >= depth) {
+            return 0;
+        }
+        int localCol = col & CHUNK_MASK;
+        if(localCol > 0 && localCol < CHUNK_MASK) {
+            Chunk chunk = chunkAt(row, col);
+            if(chunk == null) {
+                return 0;
+            }
+            long word = (long) WORDS.getOpaque(chunk.planes[plane], row & CHUNK_MASK);
+            return (int) (word >>> (localCol - 1)) & 7;
+        }
+        return bitAt(plane, row, col - 1) | bitAt(plane, row, col) << 1
+               | bitAt(plane, row, col + 1) << 2;
+    }
+
+    /**
+     * @return The bit of a cell in a plane, or 0 if the cell lies
+     *         outside the field.
+     */
+    private int bitAt(int plane, int row, int col)
+    {
+        if(col < 0 || col >= width) {
+            return 0;
+        }
+        Chunk chunk = chunkAt(row, col);
+        return chunk != null && isBitSet(chunk.planes[plane], cellIn(row, col)) ? 1 : 0;
+    }
+
+    /**
+     * @return true if the given bit of a plane is set.
+     */
+    private static boolean isBitSet(long[] plane, int bit)
+    {
+        return ((long) WORDS.getOpaque(plane, bit >>> 6) >>> bit & 1) != 0;
+    }
+
+    /**
+     * Set a bit of a plane atomically.
+     */
+    private static void setBit(long[] plane, int bit)
+    {
+        WORDS.getAndBitwiseOr(plane, bit >>> 6, 1L << bit);
+    }
+
+    /**
+     * Clear a bit of a plane atomically.
+     */
+    private static void clearBit(long[] plane, int bit)
+    {
+        WORDS.getAndBitwiseAnd(plane, bit >>> 6, ~(1L << bit));
+    }
+
+    /**
+     * Build the table of every ordering of the eight directions,
+     * in lexicographic order.
+     * @return The orderings, NEIGHBOURS bytes apiece.
+     */
+    private static byte[] createOrderings()
+    {
+        int count = 1;
+        for(int n = 2; n <= NEIGHBOURS; n++) {
+            count *= n;
+        }
+        byte[] orderings = new byte[count * NEIGHBOURS];
+        byte[] current = new byte[NEIGHBOURS];
+        for(int i = 0; i < NEIGHBOURS; i++) {
+            current[i] = (byte) i;
+        }
+        for(int ordering = 0; ordering < count; ordering++) {
+            System.arraycopy(current, 0, orderings, ordering * NEIGHBOURS, NEIGHBOURS);
+            // Step to the next permutation.
+            int i = NEIGHBOURS - 2;
+            while(i >= 0 && current[i] >= current[i + 1]) {
+                i--;
+            }
+            if(i < 0) {
+                break;
+            }
+            int j = NEIGHBOURS - 1;
+            while(current[j] <= current[i]) {
+                j--;
+            }
+            byte swap = current[i];
+            current[i] = current[j];
+            current[j] = swap;
+            for(int lo = i + 1, hi = NEIGHBOURS - 1; lo < hi; lo++, hi--) {
+                swap = current[lo];
+                current[lo] = current[hi];
+                current[hi] = swap;
+            }
+        }
+        return orderings;
+    }
+
+    /**
+     * A square of CHUNK_SIZE by CHUNK_SIZE cells of the field, with
+     * its cells in flat arrays indexed by cellIn().
+     */
+    private static class Chunk
+    {
+        // The position of the chunk in the chunks of the field.
+        final int index;
+        // Storage for the animals, one entry per cell.
+        final Object[] cells = new Object[CHUNK_CELLS];
+        // Species code of the occupant of each cell.
+        final byte[] species = new byte[CHUNK_CELLS];
+        // Infection status of the occupant of each cell, as in Animal.
+        final byte[] status = new byte[CHUNK_CELLS];
+        // The shared Location of each cell, created when first asked for.
+        final Location[] locations = new Location[CHUNK_CELLS];
+        // Occupancy bitplanes, indexed by species code, then the plane
+        // of female animals. Each row of the chunk is one word.
+        final long[][] planes = new long[FEMALES + 1][];
+        // The number of occupied cells.
+        final AtomicInteger occupants = new AtomicInteger();
+        // Which of the chunks allocated by the field this one is.
+        final int generation;
+        // Changed whenever a cell of the chunk is. Threads changing the
+        // chunk at once may lose each other's increments, but not the
+        // fact that it changed.
+        int changes;
+
+        /**
+         * Create an empty chunk.
+         * @param index The position of the chunk in the chunks of the field.
+         * @param generation The number of chunks allocated by the field.
+         */
+        Chunk(int index, int generation)
+        {
+            this.index = index;
+            this.generation = generation;
+            for(int plane = 1; plane <= FEMALES; plane++) {
+                planes[plane] = new long[CHUNK_SIZE];
+            }
+        }
+    }
 }
@@ -1,30 +1,28 @@
-import java.awt.Color;
-import java.util.HashMap;
-
 /**
- * This class collects and provides some statistical data on the state 
- * of a field. It is flexible: it will create and maintain a counter 
- * for any class of object that is found within the field.
- * 
+ * This class provides some statistical data on the state of a field.
+ * The field keeps the number of occupants of every species up to
+ * date itself, so population and viability queries do not scan the
+ * field. A full scan is only made to check those numbers.
+ *
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class FieldStats
 {
-    // Counters for each type of entity (fox, rabbit, etc.) in the simulation.
-    private HashMap<Class, Counter> counters;
-    // Whether the counters are currently up to date.
-    private boolean countsValid;
+    // Counters for each type of entity (fox, rabbit, etc.) found by a
+    // full scan of the field, indexed by species code.
+    private Counter[] counters;
 
     /**
      * Construct a FieldStats object.
      */
     public FieldStats()
     {
-        // Set up a collection for counters for each type of animal that
-        // we might find
-        counters = new HashMap<>();
-        countsValid = true;
+        // Set up a counter for each type of animal that we might find.
+        counters = new Counter[Species.COUNT];
+        for(int species = 1; species < Species.COUNT; species++) {
+            counters[species] = new Counter(Species.getName(species));
+        }
     }
 
     /**
@@ -33,55 +31,28 @@ public class FieldStats
      */
     public String getPopulationDetails(Field field)
     {
-        StringBuffer buffer = new StringBuffer();
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            buffer.append(info.getName());
-            buffer.append(": ");
-            buffer.append(info.getCount());
-            buffer.append(' ');
-        }
-        return buffer.toString();
-    }
-    
-    /**
-     * Invalidate the current set of statistics; reset all 
-     * counts to zero.
-     */
-    public void reset()
-    {
-        countsValid = false;
-        for(Class key : counters.keySet()) {
-            Counter count = counters.get(key);
-            count.reset();
+        int[] counts = new int[Species.COUNT];
+        for(int species = 1; species < Species.COUNT; species++) {
+            counts[species] = field.getCount(species);
         }
+        return getPopulationDetails(counts);
     }
 
     /**
-     * Increment the count for one class of animal.
-     * @param animalClass The class of animal to increment.
+     * Get details of a population counted earlier.
+     * @param counts The number of each species, indexed by species code.
+     * @return A string describing the population.
      */
-    public void incrementCount(Class animalClass)
+    public String getPopulationDetails(int[] counts)
     {
-        Counter count = counters.get(animalClass);
-        if(count == null) {
-            // We do not have a counter for this species yet.
-            // Create one.
-            count = new Counter(animalClass.getName());
-            counters.put(animalClass, count);
+        StringBuffer buffer = new StringBuffer();
+        for(int species = 1; species < Species.COUNT; species++) {
+            buffer.append(Species.getName(species));
+            buffer.append(": ");
+            buffer.append(counts[species]);
+            buffer.append(' ');
         }
-        count.increment();
-    }
-
-    /**
-     * Indicate that an animal count has been completed.
-     */
-    public void countFinished()
-    {
-        countsValid = true;
+        return buffer.toString();
     }
 
     /**
@@ -93,36 +64,48 @@ public class FieldStats
     {
         // How many counts are non-zero.
         int nonZero = 0;
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            if(info.getCount() > 0) {
+        for(int species = 1; species < Species.COUNT; species++) {
+            if(field.getCount(species) > 0) {
                 nonZero++;
             }
         }
         return nonZero > 1;
     }
-    
+
     /**
-     * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
+     * Check the counts kept by the field against a full scan of it.
+     * This visits every cell, so it is meant for assertions and tests.
+     * @param field The field to check.
+     * @return true if every count agrees with the scan.
+     */
+    public boolean isConsistent(Field field)
+    {
+        generateCounts(field);
+        for(int species = 1; species < Species.COUNT; species++) {
+            if(counters[species].getCount() != field.getCount(species)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generate counts of the number of each species by visiting
+     * every cell of the field.
      * @param field The field to generate the stats for.
      */
     private void generateCounts(Field field)
     {
-        reset();
+        for(int species = 1; species < Species.COUNT; species++) {
+            counters[species].reset();
+        }
         for(int row = 0; row < field.getDepth(); row++) {
             for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
+                byte species = field.getSpeciesAt(row, col);
+                if(species != Species.EMPTY) {
+                    counters[species].increment();
                 }
             }
         }
-        countsValid = true;
     }
 }
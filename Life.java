@@ -1,4 +1,4 @@
-import java.util.Random;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -9,25 +9,26 @@ import java.util.List;
  */
 public abstract class Life
 {
-    // Whether the creature is alive or not.
-    private boolean alive;
-    private Field field;
-    private Location location; 
-    protected int age;
-    // Maximum age the creature can live up to before dying.
-    protected int MAX_AGE;
-    protected static final Random rand = Randomizer.getRandom();
+    // The page of the store of the creature's species holding its
+    // state, and its entry in the page. Everything else about the
+    // creature is kept there, or in the store and the species table.
+    private final CreatureStore.Page page;
+    private final int entry;
 
     /**
      * Create a new creature at location in field.
      * 
+     * @param species The species code of the creature.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param id The number identifying the creature's random draws.
      */
-    public Life(Field field, Location location)
+    public Life(byte species, Field field, Location location, long id)
     {
-        alive = true;
-        this.field = field;
+        CreatureStore store = field.getStore(species);
+        int slot = store.allocate(id);
+        page = store.getPage(slot);
+        entry = CreatureStore.entryOf(slot);
         setLocation(location);
     }
 
@@ -35,6 +36,16 @@ public abstract class Life
      * Increase the creature's age.
      */
     abstract void incrementAge();
+
+    /**
+     * Return the code identifying the creature's species in the field.
+     * 
+     * @return One of the codes of the species table.
+     */
+    byte getSpecies()
+    {
+        return page.store.getSpecies();
+    }
     
     /**
      * Place the creature at the new location in the given field.
@@ -43,11 +54,14 @@ public abstract class Life
      */
     protected void setLocation(Location newLocation)
     {
+        Location location = page.locations[entry];
         if(location != null) {
-            field.clear(location);
+            getField().move(this, location, newLocation);
         }
-        location = newLocation;
-        field.place(this, newLocation);
+        else {
+            getField().place(this, newLocation);
+        }
+        page.locations[entry] = newLocation;
     }
 
     /** 
@@ -55,7 +69,7 @@ public abstract class Life
      */
     protected Location getLocation()
     {
-        return location;
+        return page.locations[entry];
     }
 
     /**
@@ -63,21 +77,140 @@ public abstract class Life
      */
     protected Field getField()
     {
-        return field;
+        return page.store.getField();
     } 
 
+    /**
+     * @return The number identifying the creature's random draws.
+     */
+    protected long getId()
+    {
+        return page.ids[entry];
+    }
+
+    /**
+     * Draw a random double in [0, 1) for this creature.
+     * 
+     * @param purpose What the number is used for, from Randomizer.
+     * @return A random double.
+     */
+    protected double nextDouble(int purpose)
+    {
+        return getField().getRandomizer().nextDouble(getId(), purpose);
+    }
+
+    /**
+     * Draw a random int in [0, bound) for this creature.
+     * 
+     * @param purpose What the number is used for, from Randomizer.
+     * @param bound The upper bound, exclusive.
+     * @return A random int.
+     */
+    protected int nextInt(int purpose, int bound)
+    {
+        return getField().getRandomizer().nextInt(getId(), purpose, bound);
+    }
+
+    /**
+     * Pick a random ordering of the adjacent cells for this creature.
+     * 
+     * @param purpose What the ordering is used for, from Randomizer.
+     * @return An ordering, to be passed to Field.direction().
+     */
+    protected int randomOrdering(int purpose)
+    {
+        return getField().randomOrdering(getId(), purpose);
+    }
+
+    /**
+     * Return the id to give to one of this creature's offspring.
+     * 
+     * @param child Which of the offspring born in this step it is.
+     * @return The id of the offspring.
+     */
+    protected long childId(int child)
+    {
+        return getField().getRandomizer().nextLong(getId(), Randomizer.CHILD, child);
+    }
+
+    /**
+     * @return The page of the store holding the creature's counters.
+     */
+    protected CreatureStore.Page getPage()
+    {
+        return page;
+    }
+
+    /**
+     * @return The entry of the creature's counters in its page.
+     */
+    protected int getEntry()
+    {
+        return entry;
+    }
+
+    /**
+     * @return The age of the creature.
+     */
+    protected int getAge()
+    {
+        return page.age[entry];
+    }
+
+    /**
+     * @param age The new age of the creature.
+     */
+    protected void setAge(int age)
+    {
+        page.age[entry] = age;
+    }
+
+    /**
+     * @return The age the creature can live up to before dying.
+     */
+    protected int getMaxAge()
+    {
+        return Species.getMaxAge(getSpecies());
+    }
+
+    /**
+     * Give the creature's slot in its store back, once the creature
+     * is dead and no longer in any list. The slot may then be given
+     * to another creature, so this one must not be used again.
+     */
+    void release()
+    {
+        page.store.release(page.first + entry);
+    }
+
+    /**
+     * Write the state of the creature for a checkpoint. Its species,
+     * location and id are saved by the simulator.
+     * 
+     * @param buffer The buffer to write to.
+     */
+    protected void writeState(ByteBuffer buffer)
+    {
+        buffer.putInt(getAge());
+    }
+
+    /**
+     * Read the state written by writeState.
+     * 
+     * @param buffer The buffer to read from.
+     */
+    protected void readState(ByteBuffer buffer)
+    {
+        setAge(buffer.getInt());
+    }
+
     /**
      * Check whether two creatures are of the same species.
      * @param Creatures that are being compared.
      */
-    protected boolean isSameSpecies(Object obj1, Object obj2)
+    protected boolean isSameSpecies(Life obj1, Life obj2)
     {
-        if(obj1.getClass() == obj2.getClass()){
-            return true;
-        }
-        else {
-            return false;
-        }
+        return obj1.getSpecies() == obj2.getSpecies();
     }
     
     /**
@@ -87,20 +220,26 @@ public abstract class Life
      */
     protected boolean isAlive()
     {
-        return alive;
+        return page.live[entry];
     }
 
     /**
      * Indicate that the creature is no longer alive.
-     * It is removed from the field.
+     * It is removed from the field, and its death is counted in the
+     * metrics of the field.
+     * 
+     * @param cause Why the creature died, from DeathCause.
      */
-    protected void setDead()
+    protected void setDead(int cause)
     {
-        alive = false;
+        if(page.live[entry]) {
+            getField().getMetrics().recordDeath(getSpecies(), cause);
+            page.live[entry] = false;
+        }
+        Location location = page.locations[entry];
         if(location != null) {
-            field.clear(location);
-            location = null;
-            field = null;
+            getField().clear(location);
+            page.locations[entry] = null;
         }
     }
     
@@ -1,6 +1,8 @@
 
 /**
  * Represent a location in a rectangular grid.
+ * Locations are immutable, so a Field can hand out a single shared
+ * Location for each of its cells.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
@@ -8,8 +10,8 @@
 public class Location
 {
     // Row and column positions.
-    private int row;
-    private int col;
+    private final int row;
+    private final int col;
 
     /**
      * Represent a row and column.
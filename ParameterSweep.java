@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run many headless simulations at the same time, one for every
+ * combination of a grid of parameter values and a set of seeds, and
+ * write the population of every species along the way into one CSV
+ * file. Each simulation has its own Simulator, so they share nothing
+ * but the files.
+ *
+ * The trajectories of the runs of each grid point are also aggregated
+ * across the seeds into a summary CSV file: for every grid point and
+ * recorded step, the number of runs that reached the step and the mean
+ * and standard deviation of the population of each species in them.
+ * Runs that stop early, once no longer viable, leave the later steps.
+ *
+ * Arguments: [--steps=n] [--size=DEPTHxWIDTH] [--seeds=a,b,...|a-b]
+ * [--threads=n] [--every=n] [--output=file] [--summary=file]
+ * [name=v1,v2,... ...]
+ * where each name is a parameter of SimulationParameters, such as
+ * seal.creation or cod.breedingProbability.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class ParameterSweep
+{
+    // Where results are written unless another file is given.
+    private static final String DEFAULT_OUTPUT = "sweep-results.csv";
+    private static final String DEFAULT_SUMMARY = "sweep-summary.csv";
+    // Rows kept by a simulation before they are written to the file.
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private int steps = 500;
+    private int depth = 160;
+    private int width = 240;
+    private int every = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private List<Long> seeds;
+    // The names of the swept parameters, and the values of each.
+    private List<String> names;
+    private List<double[]> values;
+    // The file receiving the results.
+    private Writer output;
+    // The trajectories of each grid point, aggregated across seeds.
+    private Trajectory[] trajectories;
+
+    /**
+     * Run a sweep from the command line.
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        ParameterSweep sweep = new ParameterSweep();
+        String output = DEFAULT_OUTPUT;
+        String summary = DEFAULT_SUMMARY;
+        for(String arg : args) {
+            if(arg.startsWith("--steps=")) {
+                sweep.steps = Integer.parseInt(arg.substring("--steps=".length()));
+            }
+            else if(arg.startsWith("--size=")) {
+                String[] size = arg.substring("--size=".length()).split("x");
+                sweep.depth = Integer.parseInt(size[0]);
+                sweep.width = Integer.parseInt(size[1]);
+            }
+            else if(arg.startsWith("--seeds=")) {
+                sweep.setSeeds(arg.substring("--seeds=".length()));
+            }
+            else if(arg.startsWith("--threads=")) {
+                sweep.threads = Integer.parseInt(arg.substring("--threads=".length()));
+                if(sweep.threads <= 0) {
+                    System.out.println("--threads must be at least 1");
+                    return;
+                }
+            }
+            else if(arg.startsWith("--every=")) {
+                sweep.every = Integer.parseInt(arg.substring("--every=".length()));
+                // Fail now, not once the simulations are running.
+                if(sweep.every <= 0) {
+                    System.out.println("--every must be at least 1");
+                    return;
+                }
+            }
+            else if(arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            }
+            else if(arg.startsWith("--summary=")) {
+                summary = arg.substring("--summary=".length());
+            }
+            else {
+                int equals = arg.indexOf('=');
+                if(equals < 0) {
+                    System.out.println("Unknown argument " + arg);
+                    return;
+                }
+                String[] list = arg.substring(equals + 1).split(",");
+                double[] parameterValues = new double[list.length];
+                for(int i = 0; i < list.length; i++) {
+                    parameterValues[i] = Double.parseDouble(list[i]);
+                }
+                sweep.addParameter(arg.substring(0, equals), parameterValues);
+            }
+        }
+        sweep.run(output, summary);
+    }
+
+    /**
+     * Create a sweep of one seed and no parameters.
+     */
+    public ParameterSweep()
+    {
+        seeds = new ArrayList<>();
+        seeds.add(Randomizer.SEED);
+        names = new ArrayList<>();
+        values = new ArrayList<>();
+    }
+
+    /**
+     * Add a parameter to the grid.
+     *
+     * @param name The name of the parameter, as used by SimulationParameters.
+     * @param parameterValues The values to try.
+     * @throws IllegalArgumentException If there is no such parameter.
+     */
+    public void addParameter(String name, double[] parameterValues)
+    {
+        // Fail now, not once the simulations are running.
+        new SimulationParameters().set(name, 0);
+        names.add(name);
+        values.add(parameterValues);
+    }
+
+    /**
+     * Set the seeds, as a list "1,2,3" or a range "1-10".
+     *
+     * @param list The seeds.
+     */
+    public void setSeeds(String list)
+    {
+        seeds.clear();
+        int dash = list.indexOf('-', 1);
+        if(dash > 0) {
+            long first = Long.parseLong(list.substring(0, dash));
+            long last = Long.parseLong(list.substring(dash + 1));
+            for(long seed = first; seed <= last; seed++) {
+                seeds.add(seed);
+            }
+        }
+        else {
+            for(String seed : list.split(",")) {
+                seeds.add(Long.parseLong(seed));
+            }
+        }
+    }
+
+    /**
+     * Run every simulation of the sweep and write the results.
+     * One row is written for every recorded step of every simulation.
+     * Rows of different simulations may be interleaved; the run column
+     * tells them apart. Once every simulation is done, the summary is
+     * written, one row for every recorded step of every grid point.
+     *
+     * @param file The file to write.
+     * @param summaryFile The file to write the summary to.
+     */
+    public void run(String file, String summaryFile) throws IOException
+    {
+        int combinations = 1;
+        for(double[] parameterValues : values) {
+            combinations *= parameterValues.length;
+        }
+        trajectories = new Trajectory[combinations];
+        for(int combination = 0; combination < combinations; combination++) {
+            trajectories[combination] = new Trajectory();
+        }
+        int runs = combinations * seeds.size();
+        System.out.println("Running " + runs + " simulations on " + threads + " threads");
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try(Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            output = writer;
+            write(header());
+            List<Future<?>> results = new ArrayList<>();
+            for(int combination = 0; combination < combinations; combination++) {
+                for(int s = 0; s < seeds.size(); s++) {
+                    int run = combination * seeds.size() + s;
+                    double[] point = gridPoint(combination);
+                    long seed = seeds.get(s);
+                    Trajectory trajectory = trajectories[combination];
+                    results.add(pool.submit(() -> {
+                        runOne(run, seed, point, trajectory);
+                        return null;
+                    }));
+                }
+            }
+            for(Future<?> result : results) {
+                try {
+                    result.get();
+                }
+                catch(ExecutionException e) {
+                    throw new IOException("A simulation failed", e.getCause());
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        writeSummary(summaryFile);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("Results written to " + file + " and " + summaryFile
+                           + " in " + elapsed + " ms");
+    }
+
+    /**
+     * Run one simulation, writing its populations as it goes.
+     *
+     * @param run The number of the simulation in the sweep.
+     * @param seed The seed of the simulation.
+     * @param point The values of the swept parameters.
+     * @param trajectory The trajectory of the grid point.
+     */
+    private void runOne(int run, long seed, double[] point, Trajectory trajectory)
+        throws IOException
+    {
+        SimulationParameters parameters = new SimulationParameters();
+        StringBuilder prefix = new StringBuilder();
+        prefix.append(run).append(',').append(seed);
+        for(int i = 0; i < point.length; i++) {
+            parameters.set(names.get(i), point[i]);
+            prefix.append(',').append(format(point[i]));
+        }
+
+        Simulator simulator = new Simulator(depth, width, true, seed, parameters);
+        StringBuilder rows = new StringBuilder();
+        addRow(rows, prefix, simulator, trajectory);
+        while(simulator.getStep() < steps && simulator.isViable()) {
+            simulator.simulateOneStep();
+            // Always record the last step of the simulation.
+            if(simulator.getStep() % every == 0 || simulator.getStep() == steps
+               || !simulator.isViable()) {
+                addRow(rows, prefix, simulator, trajectory);
+            }
+            if(rows.length() >= FLUSH_SIZE) {
+                write(rows);
+                rows.setLength(0);
+            }
+        }
+        write(rows);
+    }
+
+    /**
+     * Add a row with the current populations of a simulation, and add
+     * them to the trajectory of its grid point.
+     */
+    private void addRow(StringBuilder rows, CharSequence prefix, Simulator simulator,
+                        Trajectory trajectory)
+    {
+        Field field = simulator.getField();
+        long[] counts = new long[Species.COUNT];
+        rows.append(prefix).append(',').append(simulator.getStep());
+        for(int species = 1; species < Species.COUNT; species++) {
+            counts[species] = field.getCount(species);
+            rows.append(',').append(counts[species]);
+        }
+        rows.append('\n');
+        trajectory.add(simulator.getStep(), counts);
+    }
+
+    /**
+     * Write the trajectories of every grid point, aggregated across the
+     * seeds.
+     *
+     * @param file The file to write.
+     */
+    private void writeSummary(String file) throws IOException
+    {
+        StringBuilder header = new StringBuilder();
+        for(String name : names) {
+            header.append(name).append(',');
+        }
+        header.append("step,runs");
+        for(int species = 1; species < Species.COUNT; species++) {
+            header.append(',').append(Species.getName(species))
+                  .append(',').append(Species.getName(species)).append("_sd");
+        }
+        try(Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            writer.append(header).append('\n');
+            StringBuilder rows = new StringBuilder();
+            for(int combination = 0; combination < trajectories.length; combination++) {
+                StringBuilder prefix = new StringBuilder();
+                for(double value : gridPoint(combination)) {
+                    prefix.append(format(value)).append(',');
+                }
+                trajectories[combination].addRows(rows, prefix);
+                writer.append(rows);
+                rows.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * @return The header row of the results.
+     */
+    private String header()
+    {
+        StringBuilder header = new StringBuilder("run,seed");
+        for(String name : names) {
+            header.append(',').append(name);
+        }
+        header.append(",step");
+        for(int species = 1; species < Species.COUNT; species++) {
+            header.append(',').append(Species.getName(species));
+        }
+        return header.append('\n').toString();
+    }
+
+    /**
+     * Find the parameter values of one combination of the grid.
+     * The last parameter varies fastest.
+     *
+     * @param combination The number of the combination.
+     * @return The value of each parameter.
+     */
+    private double[] gridPoint(int combination)
+    {
+        double[] point = new double[values.size()];
+        for(int i = values.size() - 1; i >= 0; i--) {
+            double[] parameterValues = values.get(i);
+            point[i] = parameterValues[combination % parameterValues.length];
+            combination /= parameterValues.length;
+        }
+        return point;
+    }
+
+    /**
+     * Write rows to the results file. Called by every simulation.
+     *
+     * @param rows Complete rows.
+     */
+    private synchronized void write(CharSequence rows) throws IOException
+    {
+        output.append(rows);
+    }
+
+    /**
+     * @return A parameter value formatted for the results file.
+     */
+    private static String format(double value)
+    {
+        if(value == Math.rint(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * The populations of the runs of one grid point, summed step by
+     * step across the seeds. Runs of the same grid point add to it
+     * from several threads.
+     */
+    private static class Trajectory
+    {
+        // For every recorded step: the number of runs that reached it,
+        // then the sum of the population of each species, then the sum
+        // of its squares.
+        private Map<Integer, double[]> sums = new TreeMap<>();
+
+        /**
+         * Add the populations of one run at one step.
+         *
+         * @param step The step.
+         * @param counts The population of each species, by code.
+         */
+        synchronized void add(int step, long[] counts)
+        {
+            double[] sum = sums.computeIfAbsent(step, key -> new double[2 * Species.COUNT - 1]);
+            sum[0]++;
+            for(int species = 1; species < Species.COUNT; species++) {
+                sum[species] += counts[species];
+                sum[species + Species.COUNT - 1] += (double) counts[species] * counts[species];
+            }
+        }
+
+        /**
+         * Add a summary row for every step reached: the number of runs,
+         * and the mean and standard deviation of each population.
+         *
+         * @param rows Where the rows are added.
+         * @param prefix The start of every row.
+         */
+        synchronized void addRows(StringBuilder rows, CharSequence prefix)
+        {
+            for(Map.Entry<Integer, double[]> entry : sums.entrySet()) {
+                double[] sum = entry.getValue();
+                double runs = sum[0];
+                rows.append(prefix).append(entry.getKey()).append(',').append((long) runs);
+                for(int species = 1; species < Species.COUNT; species++) {
+                    double mean = sum[species] / runs;
+                    double variance = sum[species + Species.COUNT - 1] / runs - mean * mean;
+                    rows.append(',').append(format(mean))
+                        .append(',').append(format(Math.sqrt(Math.max(0, variance))));
+                }
+                rows.append('\n');
+            }
+        }
+    }
+}
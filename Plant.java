@@ -1,49 +1,74 @@
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Random;
 
 /**
- * A class representing shared characteristics of plants.
+ * A plant of any species of the species table. Every plant grows at
+ * the rate of its species, faster in the rain, breeds and dies of old
+ * age; what differs between species is looked up in the table by its
+ * species code.
  * 
  * @author Leticia Piucco Marques and Ruobing Zhao
  * @version 2020.02.23
  */
-public abstract class Plant extends Life
+public final class Plant extends Life
 {
-    protected double AGE; // Plant's age
-    protected double growRate; // The rate of plant's growth.
-    protected int stepCount;    // Plant's age increase after every step
+    // The bytes written by writeState.
+    public static final int STATE_SIZE = 4 + 8 + 8 + 4;
+
+    // The plant's growth, which is its age, the rate of its growth,
+    // and the steps it has grown for are kept in its store.
     
     /**
-     * Create a new plant at location in field.
+     * Create a plant. A plant can be created as a new born (age zero)
+     * or with a random age.
      * 
+     * @param species The code of the plant's species.
+     * @param randomAge If true, the plant will have random age.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param id The number identifying the plant's random draws.
      */
-    public Plant(Field field, Location location)
+    public Plant(byte species, boolean randomAge, Field field, Location location, long id)
     {
-        super(field, location);
+        super(species, field, location, id);
+        setGrowRate(Species.getGrowRate(species));
+        if(randomAge) {
+            setGrowth(nextInt(Randomizer.AGE, getMaxAge()));
+        }
+        else {
+            setGrowth(0);
+        }
     }
 
     /**
-     * Make this plant act.
+     * This is what the plant does most of the time - it grows at the
+     * usual rate of its species. In the process, it might breed or die
+     * of old age.
      * 
      * @param newPlants A list to receive newly born plants.
      */
-    abstract void act(List<Plant> newPlants);
+    void act(List<Plant> newPlants)
+    {
+        setGrowRate(Species.getGrowRate(getSpecies()));
+        incrementAge();
+        if(isAlive()) {
+            sprout(newPlants);
+        }
+    }
     
     /**
-     * Make this plant act when raining
+     * The plant grows faster with every step of rain.
+     * In the process, it might breed or die of old age.
      * 
      * @param newPlants A list to receive newly born plants.
      */
-    abstract void rainAct(List<Plant> newPlants);
-    
-    /**
-     * Make this plant act when snowing.
-     */
-    protected void snowAct()
+    void rainAct(List<Plant> newPlants)
     {
+        setGrowRate(getGrowRate() + Species.getRainGrowth(getSpecies()));
         incrementAge();
+        if(isAlive()) {
+            sprout(newPlants);
+        }
     }
     
     /**
@@ -52,27 +77,110 @@ public abstract class Plant extends Life
      */
     protected void incrementAge() 
     {
-        stepCount++;
-        AGE = growRate * stepCount;
-        if(AGE > MAX_AGE) {
-            setDead();
+        CreatureStore.Page page = getPage();
+        int entry = getEntry();
+        int steps = ++page.steps[entry];
+        double growth = page.growRate[entry] * steps;
+        page.growth[entry] = growth;
+        if(growth > getMaxAge()) {
+            setDead(DeathCause.AGE);
         }
     }
     
+    /**
+     * @param growth The new growth of the plant, which is its age.
+     */
+    protected void setGrowth(double growth)
+    {
+        getPage().growth[getEntry()] = growth;
+    }
+
+    /**
+     * @return The rate of the plant's growth.
+     */
+    protected double getGrowRate()
+    {
+        return getPage().growRate[getEntry()];
+    }
+
+    /**
+     * @param growRate The new rate of the plant's growth.
+     */
+    protected void setGrowRate(double growRate)
+    {
+        getPage().growRate[getEntry()] = growRate;
+    }
+
     /**
      * Generate a number representing the number of births,
-     * if the plant can breed.
+     * if the plant can breed. How the plant breeds is set by the
+     * parameters of its species.
      * 
-     * @param breed_prob The plant's breeding probability.
-     * @param max_litter Maximum number of births possible.
      * @return The number of births (may be zero).
      */
-    protected int breed(double breed_prob, int max_litter)
+    protected int breed()
     {
+        SimulationParameters parameters = getField().getParameters();
+        byte species = getSpecies();
         int births = 0;
-        if(rand.nextDouble() <= breed_prob) {
-            births = rand.nextInt(max_litter) + 1;
+        if(nextDouble(Randomizer.BREEDING) <= parameters.getBreedingProbability(species)) {
+            births = nextInt(Randomizer.LITTER, parameters.getMaxLitterSize(species)) + 1;
         }
         return births;
     }
+
+    /**
+     * Check whether or not this plant is to give birth at this step.
+     * New births will be made into free adjacent locations.
+     * 
+     * @param newPlants A list to receive newly born plants.
+     */
+    private void sprout(List<Plant> newPlants)
+    {
+        Field field = getField();
+        int births = breed();
+        if(births > 0) {
+            Location location = getLocation();
+            int ordering = randomOrdering(Randomizer.BIRTH_PLACE);
+            for(int i = 0; i < Field.NEIGHBOURS && births > 0; i++) {
+                int direction = Field.direction(ordering, i);
+                if(field.isAdjacentFree(location, direction)) {
+                    Location loc = field.adjacentLocation(location, direction);
+                    Plant child = new Plant(getSpecies(), false, field, loc, childId(births));
+                    newPlants.add(child);
+                    births--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the state of the plant for a checkpoint.
+     * 
+     * @param buffer The buffer to write to.
+     */
+    protected void writeState(ByteBuffer buffer)
+    {
+        super.writeState(buffer);
+        CreatureStore.Page page = getPage();
+        int entry = getEntry();
+        buffer.putDouble(page.growth[entry]);
+        buffer.putDouble(page.growRate[entry]);
+        buffer.putInt(page.steps[entry]);
+    }
+
+    /**
+     * Read the state written by writeState.
+     * 
+     * @param buffer The buffer to read from.
+     */
+    protected void readState(ByteBuffer buffer)
+    {
+        super.readState(buffer);
+        CreatureStore.Page page = getPage();
+        int entry = getEntry();
+        page.growth[entry] = buffer.getDouble();
+        page.growRate[entry] = buffer.getDouble();
+        page.steps[entry] = buffer.getInt();
+    }
 }
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An observer that writes the population of every species after each
+ * step to a file, together with the step number, the time of day and
+ * the weather, so that runs can be plotted afterwards.
+ *
+ * Records are either lines of comma separated values, or fixed width
+ * binary records in big-endian order: a header of MAGIC, VERSION and
+ * the number of species, then for each step its number (int), a byte
+ * of flags (DAY, SUNNY, RAINING, SNOWING), the temperature (int) and
+ * the count of each species (int, by species code from 1).
+ *
+ * Records are gathered in a buffer and written to the file when the
+ * buffer is full, or when FLUSH_INTERVAL has passed since the last
+ * write, so the file can be read while the simulation is running.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class PopulationRecorder implements SimulatorObserver
+{
+    // The formats of the file.
+    public static final int CSV = 0;
+    public static final int BINARY = 1;
+    // Marks the start of a binary file ("AOPR").
+    public static final int MAGIC = 0x414f5052;
+    // The version of the binary format.
+    public static final int VERSION = 1;
+    // The flags of a binary record.
+    public static final int DAY = 1;
+    public static final int SUNNY = 2;
+    public static final int RAINING = 4;
+    public static final int SNOWING = 8;
+    // The bytes of a binary record.
+    public static final int RECORD_SIZE = 4 + 1 + 4 + 4 * (Species.COUNT - 1);
+
+    // The bytes gathered before they are written.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The longest a record waits before it is written, in nanoseconds.
+    private static final long FLUSH_INTERVAL = 1000000000L;
+    // The longest line of comma separated values: the step, the flag,
+    // the weather and the temperature, and a count for each species.
+    private static final int MAX_LINE = 11 + 2 + 8 + 12 + 11 * (Species.COUNT - 1) + 1;
+
+    // The file being written.
+    private FileChannel channel;
+    // The records not written yet.
+    private ByteBuffer buffer;
+    // CSV or BINARY.
+    private int format;
+    // When records were last written.
+    private long lastFlush;
+    // Digits of a number, least significant first.
+    private byte[] digits;
+
+    /**
+     * Start recording to a file, replacing any file of the same name.
+     *
+     * @param file The name of the file.
+     * @param format CSV or BINARY.
+     * @throws IOException If the file cannot be created.
+     */
+    public PopulationRecorder(String file, int format) throws IOException
+    {
+        if(format != CSV && format != BINARY) {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+        this.format = format;
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        digits = new byte[11];
+        if(format == CSV) {
+            StringBuilder header = new StringBuilder("step,day,weather,temperature");
+            for(int species = 1; species < Species.COUNT; species++) {
+                header.append(',').append(Species.getName(species));
+            }
+            header.append('\n');
+            buffer.put(header.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        else {
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(Species.COUNT - 1);
+        }
+        flush();
+    }
+
+    /**
+     * Choose the format of a file from its name: CSV if it ends in
+     * ".csv", and BINARY otherwise.
+     *
+     * @param file The name of the file.
+     * @return The format of the file.
+     */
+    public static int formatOf(String file)
+    {
+        return file.toLowerCase().endsWith(".csv") ? CSV : BINARY;
+    }
+
+    /**
+     * Record the population after a step.
+     *
+     * @param step The step that has just completed.
+     * @param field The field holding the animals and plants.
+     * @param weather The current weather.
+     * @param day true if it is day time.
+     */
+    public void stepCompleted(int step, Field field, Weather weather, boolean day)
+    {
+        if(channel == null) {
+            return;
+        }
+        try {
+            if(buffer.remaining() < Math.max(RECORD_SIZE, MAX_LINE)) {
+                flush();
+            }
+            if(format == CSV) {
+                putLine(step, field, weather, day);
+            }
+            else {
+                putRecord(step, field, weather, day);
+            }
+            if(System.nanoTime() - lastFlush >= FLUSH_INTERVAL) {
+                flush();
+            }
+        }
+        catch(IOException e) {
+            System.out.println("Could not record the population: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Write the records left in the buffer and close the file.
+     *
+     * @throws IOException If the records cannot be written.
+     */
+    public void close() throws IOException
+    {
+        if(channel == null) {
+            return;
+        }
+        try {
+            flush();
+        }
+        finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Put a binary record into the buffer.
+     */
+    private void putRecord(int step, Field field, Weather weather, boolean day)
+    {
+        int flags = 0;
+        if(day) {
+            flags |= DAY;
+        }
+        if(weather.isSunny()) {
+            flags |= SUNNY;
+        }
+        if(weather.isRaining()) {
+            flags |= RAINING;
+        }
+        if(weather.isSnowing()) {
+            flags |= SNOWING;
+        }
+        buffer.putInt(step);
+        buffer.put((byte) flags);
+        buffer.putInt(weather.getTemperature());
+        for(int species = 1; species < Species.COUNT; species++) {
+            buffer.putInt(field.getCount(species));
+        }
+    }
+
+    /**
+     * Put a line of comma separated values into the buffer. Numbers are
+     * written digit by digit, so no strings are built.
+     */
+    private void putLine(int step, Field field, Weather weather, boolean day)
+    {
+        putNumber(step);
+        buffer.put((byte) ',');
+        buffer.put((byte) (day ? '1' : '0'));
+        buffer.put((byte) ',');
+        String sky = weather.toString();
+        for(int i = 0; i < sky.length(); i++) {
+            buffer.put((byte) sky.charAt(i));
+        }
+        buffer.put((byte) ',');
+        putNumber(weather.getTemperature());
+        for(int species = 1; species < Species.COUNT; species++) {
+            buffer.put((byte) ',');
+            putNumber(field.getCount(species));
+        }
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Put a number into the buffer in decimal.
+     */
+    private void putNumber(int number)
+    {
+        long value = number;
+        if(value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while(value > 0);
+        while(length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+
+    /**
+     * Write the records in the buffer to the file.
+     */
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Close the file, ignoring any error, and stop recording.
+     */
+    private void closeQuietly()
+    {
+        try {
+            channel.close();
+        }
+        catch(IOException e) {
+            // Nothing more can be recorded either way.
+        }
+        channel = null;
+    }
+}
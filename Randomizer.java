@@ -1,52 +1,173 @@
-import java.util.Random;
-
-/**
- * Provide control over the randomization of the simulation. By using the shared, fixed-seed 
- * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
- * 'useShared' to false to get different random behaviour every time.
- * 
- * @author David J. Barnes and Michael Kölling
- * @version 2016.02.29
- */
-public class Randomizer
-{
-    // The default seed for control of randomization.
-    private static final int SEED = 1111;
-    // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
-    // Determine whether a shared random generator is to be provided.
-    private static final boolean useShared = true;
-
-    /**
-     * Constructor for objects of class Randomizer
-     */
-    public Randomizer()
-    {
-    }
-
-    /**
-     * Provide a random generator.
-     * @return A random object.
-     */
-    public static Random getRandom()
-    {
-        if(useShared) {
-            return rand;
-        }
-        else {
-            return new Random();
-        }
-    }
-    
-    /**
-     * Reset the randomization.
-     * This will have no effect if randomization is not through
-     * a shared Random generator.
-     */
-    public static void reset()
-    {
-        if(useShared) {
-            rand.setSeed(SEED);
-        }
-    }
-}
+/**
+ * Provide control over the randomization of the simulation. Every random
+ * number is computed from a key made of the seed, the current step, the
+ * id of whoever draws it and the purpose of the draw, in the manner of a
+ * counter-based generator (the key is scrambled with the SplitMix64
+ * finalizer). No state is shared between draws, so runs with the same
+ * seed perform exactly the same, and a run of the tiled engine is the
+ * same however many threads it uses.
+ * The draws do not make the course of a run independent of the order
+ * the creatures act in, though: moves, predation and births still
+ * compete for the same cells. The tiled engine lets the creatures act
+ * tile by tile and the single-threaded engine in the order of its
+ * lists, so the two engines take different courses from the same seed.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class Randomizer
+{
+    // The default seed for control of randomization.
+    public static final long SEED = 1111;
+
+    // The purposes of draws. A creature never makes two draws with the
+    // same purpose and index during one step.
+    public static final int IDENTITY = 1;
+    public static final int CHILD = 2;
+    public static final int POPULATE = 3;
+    public static final int GENDER = 4;
+    public static final int INFECTION_LIMIT = 5;
+    public static final int AGE = 6;
+    public static final int FOOD_LEVEL = 7;
+    public static final int BREEDING = 8;
+    public static final int LITTER = 9;
+    public static final int FOOD_SEARCH = 10;
+    public static final int MOVE = 11;
+    public static final int BIRTH_PLACE = 12;
+    public static final int INFECTION = 13;
+    public static final int CURE = 14;
+    public static final int SPREAD = 15;
+    public static final int TEMPERATURE = 16;
+    public static final int SUNSHINE = 17;
+
+    // The id used for draws that belong to no creature.
+    public static final long NO_ENTITY = 0;
+
+    // Weyl constant used to spread consecutive keys apart.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // The seed of this run.
+    private long seed;
+    // The step draws are currently made for.
+    private int step;
+    // The seed and step, already scrambled.
+    private long stepKey;
+
+    /**
+     * Create a randomizer with the given seed, positioned at step 0.
+     * @param seed The seed of the run.
+     */
+    public Randomizer(long seed)
+    {
+        this.seed = seed;
+        setStep(0);
+    }
+
+    /**
+     * Set the step that following draws belong to.
+     * @param step The current step of the simulation.
+     */
+    public void setStep(int step)
+    {
+        this.step = step;
+        stepKey = mix(seed + step * GOLDEN_GAMMA);
+    }
+
+    /**
+     * @return The step that draws currently belong to.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Change the seed of the run, keeping the current step.
+     * @param seed The new seed.
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        setStep(step);
+    }
+
+    /**
+     * @return The seed of the run.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Provide 64 random bits.
+     * @param entity The id of the creature making the draw.
+     * @param purpose What the number is used for.
+     * @param index Which of several draws with the same purpose this is.
+     * @return A random long.
+     */
+    public long nextLong(long entity, int purpose, int index)
+    {
+        long z = mix(stepKey + entity * GOLDEN_GAMMA);
+        return mix(z + (((long) purpose << 32) | (index & 0xffffffffL)));
+    }
+
+    /**
+     * Provide a random double in [0, 1).
+     * @param entity The id of the creature making the draw.
+     * @param purpose What the number is used for.
+     * @return A random double.
+     */
+    public double nextDouble(long entity, int purpose)
+    {
+        return nextDouble(entity, purpose, 0);
+    }
+
+    /**
+     * Provide a random double in [0, 1).
+     * @param entity The id of the creature making the draw.
+     * @param purpose What the number is used for.
+     * @param index Which of several draws with the same purpose this is.
+     * @return A random double.
+     */
+    public double nextDouble(long entity, int purpose, int index)
+    {
+        return (nextLong(entity, purpose, index) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Provide a random int in [0, bound).
+     * @param entity The id of the creature making the draw.
+     * @param purpose What the number is used for.
+     * @param bound The upper bound, exclusive. Must be positive.
+     * @return A random int.
+     */
+    public int nextInt(long entity, int purpose, int bound)
+    {
+        return (int) (((nextLong(entity, purpose, 0) >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * Provide a random boolean.
+     * @param entity The id of the creature making the draw.
+     * @param purpose What the value is used for.
+     * @return A random boolean.
+     */
+    public boolean nextBoolean(long entity, int purpose)
+    {
+        return nextLong(entity, purpose, 0) < 0;
+    }
+
+    /**
+     * Scramble a key (the SplitMix64 finalizer).
+     * @param z The key.
+     * @return The scrambled key.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,636 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An observer that keeps a log of a run from which any of its steps
+ * can be brought back, without running the simulation from the start.
+ *
+ * The random numbers of a step are drawn from the seed and the number
+ * of the step alone, so a simulation restored to one step takes the
+ * same course from there as the run did, provided it runs on the same
+ * engine: a run logged on the tiled engine must be sought on the tiled
+ * engine, with any number of threads, and a single-threaded run on the
+ * single-threaded engine, which seek() checks. The log therefore keeps a
+ * full checkpoint of the simulation, a keyframe, every so many steps,
+ * and in between only a few bytes for each step: its number, the time
+ * of day and the weather, and how the population of each species has
+ * changed. To reach a step, the simulation is restored from the last
+ * keyframe before it and run forward, and the populations it reaches
+ * are checked against the log on the way.
+ *
+ * A keyframe is put into a buffer on the thread running the
+ * simulation, as a checkpoint is, and written to disk by a thread of
+ * its own, so the steps go on while it is written. The step records
+ * that follow are held back until it is. If the previous keyframe is
+ * still being written when the next one is due, the next one is put
+ * off to a later step.
+ *
+ * The file is in big-endian order: a header of MAGIC, VERSION, the
+ * depth and width of the field, the number of species and the engine
+ * (SINGLE_THREADED or TILED), then the records, each starting with a
+ * byte:
+ * - a step: its flags (DAY, SUNNY, RAINING, SNOWING), the steps since
+ *   the last record and the change in the count of each species, as
+ *   variable length numbers of 7 bits a byte;
+ * - KEYFRAME: the step (int), the count of each species (int), the
+ *   length of the checkpoint (int) and the checkpoint itself, as
+ *   written by Checkpoint.put();
+ * - INDEX: the number of keyframes (int), and the step (int) and
+ *   position in the file (long) of each.
+ * The index is written when the log is closed, followed by its
+ * position (long) and MAGIC. A log that was not closed is read by
+ * going through its records.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class ReplayLog implements SimulatorObserver
+{
+    // Marks the start and the end of a log ("AORL").
+    public static final int MAGIC = 0x414f524c;
+    // The version of the format.
+    public static final int VERSION = 2;
+    // The engines a run can be logged on.
+    public static final int SINGLE_THREADED = 0;
+    public static final int TILED = 1;
+    // The flags of a step record.
+    public static final int DAY = 1;
+    public static final int SUNNY = 2;
+    public static final int RAINING = 4;
+    public static final int SNOWING = 8;
+    // The first byte of the records that are not steps.
+    public static final int KEYFRAME = 0x80;
+    public static final int INDEX = 0x81;
+    // The steps between keyframes unless told otherwise.
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    // The bytes of the header and of the trailer.
+    private static final int HEADER_SIZE = 4 * 6;
+    private static final int TRAILER_SIZE = 8 + 4;
+    // The bytes gathered before they are written.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The longest step record: its flags, the steps since the last
+    // record, and the change in each count.
+    private static final int MAX_STEP_SIZE = 1 + 5 + 5 * (Species.COUNT - 1);
+    // The longest a record waits before it is written, in nanoseconds.
+    private static final long FLUSH_INTERVAL = 1000000000L;
+
+    // The simulation logged.
+    private Simulator simulator;
+    // The file being written, and the position of the buffer in it.
+    private FileChannel channel;
+    private long position;
+    // The records not written yet.
+    private ByteBuffer buffer;
+    // The thread writing keyframes to disk.
+    private ExecutorService writer;
+    // Whether a keyframe is being written.
+    private AtomicBoolean writing;
+    // Why the last keyframe could not be written, if it could not.
+    private volatile IOException failure;
+    // The keyframe being written, reused for the next.
+    private ByteBuffer keyframe;
+    // The steps between keyframes.
+    private int interval;
+    // The step of the last record, and of the last keyframe.
+    private int lastStep;
+    private int lastKeyframe;
+    // The count of each species at the last record.
+    private int[] counts;
+    // The step and position of each keyframe written.
+    private List<Integer> keyframeSteps;
+    private List<Long> keyframePositions;
+    // When records were last written.
+    private long lastFlush;
+
+    /**
+     * Start a log of a simulation, replacing any file of the same name.
+     * The current state of the simulation is its first keyframe.
+     *
+     * @param file The name of the file.
+     * @param simulator The simulation to log. The log must be added to
+     *                  its observers as well.
+     * @param interval The steps between keyframes.
+     * @throws IOException If the file cannot be created.
+     */
+    public ReplayLog(String file, Simulator simulator, int interval) throws IOException
+    {
+        if(interval <= 0) {
+            throw new IllegalArgumentException("The steps between keyframes must be positive");
+        }
+        this.simulator = simulator;
+        this.interval = interval;
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        counts = new int[Species.COUNT];
+        keyframeSteps = new ArrayList<>();
+        keyframePositions = new ArrayList<>();
+        writing = new AtomicBoolean();
+        writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "keyframe-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Field field = simulator.getField();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(field.getDepth());
+        buffer.putInt(field.getWidth());
+        buffer.putInt(Species.COUNT - 1);
+        buffer.putInt(simulator.isTiled() ? TILED : SINGLE_THREADED);
+        putKeyframe(simulator.getStep(), field);
+    }
+
+    /**
+     * Log a step: as a keyframe if one is due and the last one has been
+     * written, or if the simulation has gone back to an earlier step,
+     * and in a few bytes otherwise.
+     *
+     * @param step The step that has just completed.
+     * @param field The field holding the animals and plants.
+     * @param weather The current weather.
+     * @param day true if it is day time.
+     */
+    public void stepCompleted(int step, Field field, Weather weather, boolean day)
+    {
+        if(channel == null) {
+            return;
+        }
+        try {
+            if(failure != null) {
+                throw failure;
+            }
+            if(step <= lastStep || (step - lastKeyframe >= interval && !writing.get())) {
+                putKeyframe(step, field);
+            }
+            else {
+                putStep(step, field, weather, day);
+            }
+            if(System.nanoTime() - lastFlush >= FLUSH_INTERVAL) {
+                flush();
+            }
+        }
+        catch(IOException e) {
+            System.out.println("Could not log the step: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Write the records left in the buffer and the index of the
+     * keyframes, and close the file.
+     *
+     * @throws IOException If the log cannot be written.
+     */
+    public void close() throws IOException
+    {
+        if(channel == null) {
+            return;
+        }
+        try {
+            int count = keyframeSteps.size();
+            ensureRoom(1 + 4);
+            long index = position + buffer.position();
+            buffer.put((byte) INDEX);
+            buffer.putInt(count);
+            for(int i = 0; i < count; i++) {
+                ensureRoom(4 + 8);
+                buffer.putInt(keyframeSteps.get(i));
+                buffer.putLong(keyframePositions.get(i));
+            }
+            ensureRoom(TRAILER_SIZE);
+            buffer.putLong(index);
+            buffer.putInt(MAGIC);
+            awaitKeyframe();
+            flush();
+        }
+        finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Bring a simulation to a step of a logged run: restore it from the
+     * last keyframe before the step, and run it forward to the step.
+     * The simulation must have the parameters of the run, and the size
+     * of its field.
+     *
+     * @param file The name of the log.
+     * @param simulator The simulation to restore.
+     * @param step The step to reach.
+     * @throws IOException If the log cannot be read, does not fit the
+     *                     simulation, or the simulation departs from it.
+     */
+    public static void seek(String file, Simulator simulator, int step) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE, file);
+            if(header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a replay log");
+            }
+            int version = header.getInt();
+            if(version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            header.getInt();
+            header.getInt();
+            if(header.getInt() != Species.COUNT - 1) {
+                throw new IOException(file + " is for another number of species");
+            }
+            int engine = header.getInt();
+            if(engine != (simulator.isTiled() ? TILED : SINGLE_THREADED)) {
+                throw new IOException(file + " was logged on the "
+                                      + (engine == TILED ? "tiled" : "single-threaded")
+                                      + " engine, and must be sought on it: run "
+                                      + (engine == TILED ? "with" : "without") + " --threads");
+            }
+
+            long[] index = readIndex(channel, file);
+            long start = -1;
+            for(int i = 0; i < index.length; i += 2) {
+                if(index[i] <= step) {
+                    start = index[i + 1];
+                }
+            }
+            if(start < 0) {
+                throw new IllegalArgumentException("Step " + step + " is before the start of " + file);
+            }
+
+            ByteBuffer keyframe = readFully(channel, start, 1 + 4 + 4 * (Species.COUNT - 1) + 4, file);
+            keyframe.position(1 + 4);
+            int[] counts = new int[Species.COUNT];
+            for(int species = 1; species < Species.COUNT; species++) {
+                counts[species] = keyframe.getInt();
+            }
+            int length = keyframe.getInt();
+            long next = start + keyframe.limit() + length;
+            ByteBuffer checkpoint = readFully(channel, start + keyframe.limit(), length, file);
+            simulator.readState(Checkpoint.unpack(checkpoint, file));
+
+            // The counts logged for the steps up to the one sought.
+            Map<Integer, int[]> logged = readSteps(channel, next, simulator.getStep(), step, counts);
+            Field field = simulator.getField();
+            while(simulator.getStep() < step) {
+                simulator.simulateOneStep();
+                int[] expected = logged.get(simulator.getStep());
+                if(expected != null) {
+                    for(int species = 1; species < Species.COUNT; species++) {
+                        if(field.getCount(species) != expected[species]) {
+                            throw new IOException("The simulation departs from " + file
+                                                  + " at step " + simulator.getStep());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a keyframe into the file. Its record is written straight
+     * away, and the checkpoint it holds by the writing thread, after
+     * the previous keyframe if that is still being written.
+     */
+    private void putKeyframe(int step, Field field) throws IOException
+    {
+        awaitKeyframe();
+        int size = Checkpoint.sizeOf(simulator);
+        ensureRoom(1 + 4 + 4 * (Species.COUNT - 1) + 4);
+        keyframeSteps.add(step);
+        keyframePositions.add(position + buffer.position());
+        buffer.put((byte) KEYFRAME);
+        buffer.putInt(step);
+        for(int species = 1; species < Species.COUNT; species++) {
+            counts[species] = field.getCount(species);
+            buffer.putInt(counts[species]);
+        }
+        buffer.putInt(size);
+        flush();
+
+        if(keyframe == null || keyframe.capacity() < size) {
+            keyframe = ByteBuffer.allocateDirect(size + size / 4);
+        }
+        keyframe.clear();
+        Checkpoint.put(simulator, keyframe);
+        keyframe.flip();
+
+        // The records that follow go after the room kept for it.
+        ByteBuffer contents = keyframe;
+        long start = position;
+        position += size;
+        writing.set(true);
+        writer.execute(() -> {
+            try {
+                while(contents.hasRemaining()) {
+                    channel.write(contents, start + contents.position());
+                }
+            }
+            catch(IOException e) {
+                failure = e;
+            }
+            finally {
+                writing.set(false);
+            }
+        });
+        lastStep = step;
+        lastKeyframe = step;
+    }
+
+    /**
+     * Wait for the keyframe being written, if any.
+     */
+    private void awaitKeyframe() throws IOException
+    {
+        if(writing.get()) {
+            try {
+                // The writer runs its tasks in turn, so this one ends
+                // once the keyframe is written.
+                writer.submit(() -> { }).get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing a keyframe");
+            }
+            catch(ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Put a step record into the buffer.
+     */
+    private void putStep(int step, Field field, Weather weather, boolean day) throws IOException
+    {
+        ensureRoom(MAX_STEP_SIZE);
+        int flags = 0;
+        if(day) {
+            flags |= DAY;
+        }
+        if(weather.isSunny()) {
+            flags |= SUNNY;
+        }
+        if(weather.isRaining()) {
+            flags |= RAINING;
+        }
+        if(weather.isSnowing()) {
+            flags |= SNOWING;
+        }
+        buffer.put((byte) flags);
+        putNumber(step - lastStep);
+        for(int species = 1; species < Species.COUNT; species++) {
+            int count = field.getCount(species);
+            int change = count - counts[species];
+            // Small changes either way take few bytes.
+            putNumber((change << 1) ^ (change >> 31));
+            counts[species] = count;
+        }
+        lastStep = step;
+    }
+
+    /**
+     * Put a number into the buffer, 7 bits a byte, lowest first; the
+     * top bit of a byte is set when more bytes follow.
+     */
+    private void putNumber(int number)
+    {
+        while((number & ~0x7f) != 0) {
+            buffer.put((byte) ((number & 0x7f) | 0x80));
+            number >>>= 7;
+        }
+        buffer.put((byte) number);
+    }
+
+    /**
+     * Make sure the buffer has room for the given number of bytes,
+     * waiting for the keyframe being written if it has to be flushed.
+     */
+    private void ensureRoom(int bytes) throws IOException
+    {
+        if(buffer.remaining() < bytes) {
+            awaitKeyframe();
+            flush();
+        }
+    }
+
+    /**
+     * Write the records in the buffer to the file, unless a keyframe
+     * is being written before them, in which case they are kept for
+     * the next flush.
+     */
+    private void flush() throws IOException
+    {
+        if(writing.get()) {
+            return;
+        }
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Close the file, ignoring any error, and stop logging.
+     */
+    private void closeQuietly()
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        }
+        catch(IOException e) {
+            // Nothing more can be logged either way.
+        }
+        channel = null;
+    }
+
+    /**
+     * Read the steps and positions of the keyframes of a log, from its
+     * index if it was closed, and from its records otherwise.
+     *
+     * @return The step and position of each keyframe, one after the other.
+     */
+    private static long[] readIndex(FileChannel channel, String file) throws IOException
+    {
+        long size = channel.size();
+        if(size >= HEADER_SIZE + TRAILER_SIZE) {
+            ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE, file);
+            long position = trailer.getLong();
+            if(trailer.getInt() == MAGIC && position >= HEADER_SIZE
+               && position <= size - TRAILER_SIZE - 5) {
+                ByteBuffer index = readFully(channel, position, (int) (size - TRAILER_SIZE - position), file);
+                if(index.get() == INDEX) {
+                    int count = index.getInt();
+                    long[] keyframes = new long[2 * count];
+                    for(int i = 0; i < count; i++) {
+                        keyframes[2 * i] = index.getInt();
+                        keyframes[2 * i + 1] = index.getLong();
+                    }
+                    return keyframes;
+                }
+            }
+        }
+
+        // Go through the records; a keyframe cut short is left out.
+        List<Long> keyframes = new ArrayList<>();
+        long position = HEADER_SIZE;
+        DataInputStream in = open(channel, position);
+        try {
+            while(true) {
+                int kind = in.readUnsignedByte();
+                if(kind == KEYFRAME) {
+                    int step = in.readInt();
+                    in.skipNBytes(4 * (Species.COUNT - 1));
+                    int length = in.readInt();
+                    long end = position + 1 + 4 + 4 * (Species.COUNT - 1) + 4 + length;
+                    if(end > size) {
+                        break;
+                    }
+                    keyframes.add((long) step);
+                    keyframes.add(position);
+                    in.skipNBytes(length);
+                    position = end;
+                }
+                else if(kind == INDEX) {
+                    break;
+                }
+                else {
+                    position += 1 + skipNumbers(in, Species.COUNT);
+                }
+            }
+        }
+        catch(EOFException e) {
+            // The log ends with the last record written.
+        }
+        long[] found = new long[keyframes.size()];
+        for(int i = 0; i < found.length; i++) {
+            found[i] = keyframes.get(i);
+        }
+        return found;
+    }
+
+    /**
+     * Read the counts logged for the steps that follow a keyframe, up
+     * to a given step, or the next keyframe.
+     *
+     * @param channel The log.
+     * @param position Where the records after the keyframe start.
+     * @param from The step of the keyframe.
+     * @param to The last step to read.
+     * @param counts The count of each species at the keyframe; changed.
+     * @return The count of each species, by step.
+     */
+    private static Map<Integer, int[]> readSteps(FileChannel channel, long position,
+                                                 int from, int to, int[] counts)
+        throws IOException
+    {
+        Map<Integer, int[]> logged = new HashMap<>();
+        DataInputStream in = open(channel, position);
+        int step = from;
+        try {
+            while(step < to) {
+                int kind = in.readUnsignedByte();
+                if(kind == KEYFRAME || kind == INDEX) {
+                    break;
+                }
+                step += readNumber(in);
+                for(int species = 1; species < Species.COUNT; species++) {
+                    int change = readNumber(in);
+                    counts[species] += (change >>> 1) ^ -(change & 1);
+                }
+                logged.put(step, counts.clone());
+            }
+        }
+        catch(EOFException e) {
+            // The log ends with the last record written.
+        }
+        return logged;
+    }
+
+    /**
+     * Open a stream over the log from a position.
+     */
+    private static DataInputStream open(FileChannel channel, long position) throws IOException
+    {
+        channel.position(position);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    /**
+     * Read a number written by putNumber().
+     */
+    private static int readNumber(DataInputStream in) throws IOException
+    {
+        int number = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            number |= (b & 0x7f) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return number;
+    }
+
+    /**
+     * Skip numbers written by putNumber().
+     *
+     * @return The bytes skipped.
+     */
+    private static int skipNumbers(DataInputStream in, int count) throws IOException
+    {
+        int bytes = 0;
+        for(int i = 0; i < count; i++) {
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                bytes++;
+            } while((b & 0x80) != 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * Read bytes of the log at a position.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length,
+                                        String file) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        while(bytes.hasRemaining()) {
+            if(channel.read(bytes, position + bytes.position()) < 0) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+}
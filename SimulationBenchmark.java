@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.awt.GraphicsEnvironment;
+
+/**
+ * Benchmarks for the hot paths of the simulation: a headless step at
+ * several grid sizes and densities, the neighbourhood queries of the
+ * field, populating the field, drawing the view and counting species.
+ *
+ * Each benchmark is run for a number of timed warm-up and measurement
+ * iterations. Besides the average time per operation, the bytes
+ * allocated per operation and the garbage collections during the
+ * measurement are recorded, like JMH's gc profiler. The results are
+ * written as JSON in the layout JMH uses, so the same tools can read
+ * them.
+ *
+ * Arguments: [--quick] [output file]
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class SimulationBenchmark
+{
+    // Where results are written unless another file is given.
+    private static final String DEFAULT_OUTPUT = "benchmark-results.json";
+
+    // The grid sizes, as {depth, width}, and population densities.
+    private static final int[][] GRID_SIZES = {{160, 240}, {500, 500}, {1000, 1000}};
+    private static final double[] DENSITIES = {0.5, 1.0, 2.0};
+
+    // Results of operations, kept so the JIT cannot discard the work.
+    private static volatile long sink;
+
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationNanos = 500000000L;
+    private int[][] gridSizes = GRID_SIZES;
+
+    // The results gathered so far, as JSON objects.
+    private List<String> results;
+
+    /**
+     * Run every benchmark and write the results.
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        SimulationBenchmark benchmark = new SimulationBenchmark();
+        String output = DEFAULT_OUTPUT;
+        for(String arg : args) {
+            if(arg.equals("--quick")) {
+                benchmark.warmupIterations = 1;
+                benchmark.measurementIterations = 2;
+                benchmark.iterationNanos = 100000000L;
+                benchmark.gridSizes = new int[][] {GRID_SIZES[0]};
+            }
+            else {
+                output = arg;
+            }
+        }
+        benchmark.runAll();
+        benchmark.write(output);
+        System.out.println("Results written to " + output);
+    }
+
+    /**
+     * Create a benchmark run with no results yet.
+     */
+    public SimulationBenchmark()
+    {
+        results = new ArrayList<>();
+    }
+
+    /**
+     * Run every benchmark.
+     */
+    public void runAll()
+    {
+        for(int[] size : gridSizes) {
+            for(double density : DENSITIES) {
+                benchmarkStep(size[0], size[1], density);
+            }
+        }
+        for(int[] size : gridSizes) {
+            benchmarkField(size[0], size[1]);
+            benchmarkPopulate(size[0], size[1]);
+            benchmarkStats(size[0], size[1]);
+            benchmarkRender(size[0], size[1]);
+        }
+    }
+
+    /**
+     * Time Simulator.simulateOneStep on a headless simulator.
+     * A simulation that stops being viable is reset, and the reset
+     * is included in the time of that step.
+     */
+    private void benchmarkStep(int depth, int width, double density)
+    {
+        Simulator simulator = new Simulator(depth, width, true);
+        simulator.setPopulationDensity(density);
+        simulator.reset();
+        measure("Simulator.simulateOneStep", params(depth, width, density), () -> {
+            if(!simulator.isViable()) {
+                simulator.reset();
+            }
+            simulator.simulateOneStep();
+            sink += simulator.getStep();
+        });
+    }
+
+    /**
+     * Time the neighbourhood queries of a populated field.
+     */
+    private void benchmarkField(int depth, int width)
+    {
+        Simulator simulator = new Simulator(depth, width, true);
+        Field field = simulator.getField();
+        int cells = depth * width;
+        int[] next = new int[1];
+        measure("Field.adjacentLocations", params(depth, width, 1.0), () -> {
+            Location location = field.locationOf(next[0]);
+            next[0] = (next[0] + 1) % cells;
+            sink += field.adjacentLocations(location).size();
+        });
+        measure("Field.getFreeAdjacentLocations", params(depth, width, 1.0), () -> {
+            Location location = field.locationOf(next[0]);
+            next[0] = (next[0] + 1) % cells;
+            sink += field.getFreeAdjacentLocations(location).size();
+        });
+    }
+
+    /**
+     * Time populating the field, which happens on every reset.
+     */
+    private void benchmarkPopulate(int depth, int width)
+    {
+        Simulator simulator = new Simulator(depth, width, true);
+        measure("Simulator.populate", params(depth, width, 1.0), () -> {
+            simulator.reset();
+            sink += simulator.getStep();
+        });
+    }
+
+    /**
+     * Time the full count of the species in the field, and the
+     * population summary built from the counts kept by the field.
+     */
+    private void benchmarkStats(int depth, int width)
+    {
+        Simulator simulator = new Simulator(depth, width, true);
+        Field field = simulator.getField();
+        FieldStats stats = new FieldStats();
+        measure("FieldStats.generateCounts", params(depth, width, 1.0), () -> {
+            sink += stats.isConsistent(field) ? 1 : 0;
+        });
+        measure("FieldStats.getPopulationDetails", params(depth, width, 1.0), () -> {
+            sink += stats.getPopulationDetails(field).length();
+        });
+    }
+
+    /**
+     * Time the view taking a snapshot of the whole field, which is
+     * what a step waits for; drawing happens on the event dispatch
+     * thread. Needs a display.
+     */
+    private void benchmarkRender(int depth, int width)
+    {
+        if(GraphicsEnvironment.isHeadless()) {
+            System.out.println("SimulatorView.showStatus skipped: no display");
+            return;
+        }
+        Simulator simulator = new Simulator(depth, width, true);
+        SimulatorView view = new SimulatorView(depth, width);
+        Field field = simulator.getField();
+        Weather weather = new Weather(field.getRandomizer());
+        measure("SimulatorView.showStatus", params(depth, width, 1.0), () -> {
+            view.showStatus(simulator.getStep(), field, weather, true);
+        });
+        view.dispose();
+    }
+
+    /**
+     * Run one benchmark and record its result.
+     * @param name The name of the benchmark.
+     * @param params The parameters of the benchmark, as a JSON object.
+     * @param operation The operation to time.
+     */
+    private void measure(String name, String params, Runnable operation)
+    {
+        for(int i = 0; i < warmupIterations; i++) {
+            runIteration(operation);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        double[] scores = new double[measurementIterations];
+        long operations = 0;
+        for(int i = 0; i < measurementIterations; i++) {
+            long[] iteration = runIteration(operation);
+            scores[i] = (double) iteration[1] / iteration[0];
+            operations += iteration[0];
+        }
+
+        double allocated = (double) (threads.getThreadAllocatedBytes(threadId) - allocatedBefore)
+                           / operations;
+        long gcCount = gcCount() - gcCountBefore;
+        long gcTime = gcTime() - gcTimeBefore;
+
+        double mean = 0;
+        for(double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for(double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+
+        System.out.printf("%-36s %-40s %14.1f ns/op %12.1f B/op%n", name, params, mean, allocated);
+        results.add("  {\n"
+            + "    \"benchmark\": \"" + name + "\",\n"
+            + "    \"mode\": \"avgt\",\n"
+            + "    \"warmupIterations\": " + warmupIterations + ",\n"
+            + "    \"measurementIterations\": " + measurementIterations + ",\n"
+            + "    \"params\": " + params + ",\n"
+            + "    \"primaryMetric\": {\"score\": " + number(mean)
+            + ", \"scoreError\": " + number(error) + ", \"scoreUnit\": \"ns/op\"},\n"
+            + "    \"secondaryMetrics\": {\n"
+            + "      \"gc.alloc.rate.norm\": {\"score\": " + number(allocated) + ", \"scoreUnit\": \"B/op\"},\n"
+            + "      \"gc.count\": {\"score\": " + gcCount + ", \"scoreUnit\": \"counts\"},\n"
+            + "      \"gc.time\": {\"score\": " + gcTime + ", \"scoreUnit\": \"ms\"}\n"
+            + "    }\n"
+            + "  }");
+    }
+
+    /**
+     * Repeat an operation for the length of one iteration.
+     * @param operation The operation to repeat.
+     * @return The number of operations and the nanoseconds they took.
+     */
+    private long[] runIteration(Runnable operation)
+    {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operation.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < iterationNanos);
+        return new long[] {operations, elapsed};
+    }
+
+    /**
+     * Write the results gathered so far as a JSON array.
+     * @param output The file to write.
+     */
+    public void write(String output) throws IOException
+    {
+        try(PrintWriter writer = new PrintWriter(
+                Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+            writer.println("[");
+            writer.println(String.join(",\n", results));
+            writer.println("]");
+        }
+    }
+
+    /**
+     * @return The parameters of a benchmark as a JSON object.
+     */
+    private static String params(int depth, int width, double density)
+    {
+        return "{\"depth\": \"" + depth + "\", \"width\": \"" + width
+               + "\", \"density\": \"" + density + "\"}";
+    }
+
+    /**
+     * @return A number formatted for JSON.
+     */
+    private static String number(double value)
+    {
+        return String.format(java.util.Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * @return The number of collections run by all collectors so far.
+     */
+    private static long gcCount()
+    {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    /**
+     * @return The time spent in all collectors so far, in milliseconds.
+     */
+    private static long gcTime()
+    {
+        long time = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,572 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * Counters and timings of one simulation: how long each phase of a
+ * step takes, and how many creatures of each species are born, die
+ * (by cause), are infected and are cured.
+ *
+ * Counters are LongAdders, which spread concurrent increments over
+ * several cells, so the tiles of a step can count without contending
+ * on one word. Phase times are kept as histograms with power-of-two
+ * buckets of nanoseconds.
+ *
+ * The metrics can be read over JMX once registered, or dumped in the
+ * Prometheus text format. Over JMX, the counters of each species and
+ * the histogram of each phase are published as tables of open data,
+ * with a row per species and a row per phase, which any JMX client
+ * can read.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class SimulationMetrics implements SimulationMetricsMBean
+{
+    // The phases of a step that are timed.
+    public static final int ANIMALS = 0;
+    public static final int PLANTS = 1;
+    public static final int MERGE = 2;
+    public static final int OBSERVERS = 3;
+    public static final int STEP = 4;
+    // Number of timed phases.
+    public static final int PHASES = 5;
+
+    // Names of the phases, indexed by phase.
+    private static final String[] PHASE_NAMES = {
+        "animals", "plants", "merge", "observers", "step"
+    };
+    // Number of histogram buckets: bucket b counts times below 2^b
+    // nanoseconds (and at least 2^(b-1)); the last one counts the rest.
+    private static final int BUCKETS = 40;
+    // The domain under which the metrics are registered over JMX.
+    private static final String DOMAIN = "ArcticOceanSimulator";
+    // The open types of the tables published over JMX: the counters of
+    // a species, and the histogram of a phase, by row and by table.
+    private static final CompositeType SPECIES_ROW;
+    private static final TabularType SPECIES_TABLE;
+    private static final CompositeType PHASE_ROW;
+    private static final TabularType PHASE_TABLE;
+
+    static {
+        String[] items = new String[5 + DeathCause.COUNT];
+        OpenType<?>[] types = new OpenType<?>[items.length];
+        items[0] = "species";
+        types[0] = SimpleType.STRING;
+        items[1] = "population";
+        items[2] = "births";
+        items[3] = "infections";
+        items[4] = "cures";
+        for(int cause = 0; cause < DeathCause.COUNT; cause++) {
+            items[5 + cause] = "deaths." + DeathCause.getName(cause);
+        }
+        for(int i = 1; i < items.length; i++) {
+            types[i] = SimpleType.LONG;
+        }
+        try {
+            SPECIES_ROW = new CompositeType("SpeciesCounters", "The counters of one species",
+                                            items, items, types);
+            SPECIES_TABLE = new TabularType("SpeciesCounterTable", "The counters of every species",
+                                            SPECIES_ROW, new String[] {"species"});
+            String[] phaseItems = {"phase", "count", "sumNanos", "buckets"};
+            OpenType<?>[] phaseTypes = {
+                SimpleType.STRING, SimpleType.LONG, SimpleType.LONG,
+                ArrayType.getPrimitiveArrayType(long[].class)
+            };
+            PHASE_ROW = new CompositeType("PhaseHistogram", "The histogram of one phase",
+                                          phaseItems, phaseItems, phaseTypes);
+            PHASE_TABLE = new TabularType("PhaseHistogramTable", "The histogram of every phase",
+                                          PHASE_ROW, new String[] {"phase"});
+        }
+        catch(OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Histogram counts, indexed by phase * BUCKETS + bucket.
+    private final LongAdder[] buckets;
+    // Total time and number of timings of each phase.
+    private final LongAdder[] phaseNanos;
+    private final LongAdder[] phaseCount;
+    // Event counters, indexed by species code.
+    private final LongAdder[] births;
+    private final LongAdder[] infections;
+    private final LongAdder[] cures;
+    // Deaths, indexed by species code * DeathCause.COUNT + cause.
+    private final LongAdder[] deaths;
+    // The population of each species after the last step.
+    private final AtomicLongArray population;
+    // Number of steps simulated.
+    private final LongAdder steps;
+
+    /**
+     * Create metrics with every counter at zero.
+     */
+    public SimulationMetrics()
+    {
+        buckets = counters(PHASES * BUCKETS);
+        phaseNanos = counters(PHASES);
+        phaseCount = counters(PHASES);
+        births = counters(Species.COUNT);
+        infections = counters(Species.COUNT);
+        cures = counters(Species.COUNT);
+        deaths = counters(Species.COUNT * DeathCause.COUNT);
+        population = new AtomicLongArray(Species.COUNT);
+        steps = new LongAdder();
+    }
+
+    /**
+     * Record how long a phase took.
+     *
+     * @param phase The phase, such as ANIMALS.
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void recordPhase(int phase, long nanos)
+    {
+        recordPhase(phase, nanos, 1);
+    }
+
+    /**
+     * Record how long several runs of a phase took together, when only
+     * their total is known, such as the steps of a snow spell run in
+     * one pass. Each run is counted as taking an equal share.
+     *
+     * @param phase The phase, such as ANIMALS.
+     * @param nanos The time taken by all the runs, in nanoseconds.
+     * @param count The number of runs.
+     */
+    public void recordPhase(int phase, long nanos, int count)
+    {
+        if(nanos < 0) {
+            nanos = 0;
+        }
+        long each = nanos / count;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(each), BUCKETS - 1);
+        buckets[phase * BUCKETS + bucket].add(count);
+        phaseNanos[phase].add(nanos);
+        phaseCount[phase].add(count);
+    }
+
+    /**
+     * Record that steps have been simulated.
+     *
+     * @param count The number of steps.
+     */
+    public void recordSteps(int count)
+    {
+        steps.add(count);
+    }
+
+    /**
+     * Record births.
+     *
+     * @param species The species code of the newborns.
+     * @param count The number of newborns.
+     */
+    public void recordBirths(byte species, int count)
+    {
+        births[species].add(count);
+    }
+
+    /**
+     * Record a death.
+     *
+     * @param species The species code of the dead creature.
+     * @param cause The cause of death, from DeathCause.
+     */
+    public void recordDeath(byte species, int cause)
+    {
+        deaths[species * DeathCause.COUNT + cause].increment();
+    }
+
+    /**
+     * Record an infection.
+     *
+     * @param species The species code of the infected animal.
+     */
+    public void recordInfection(byte species)
+    {
+        infections[species].increment();
+    }
+
+    /**
+     * Record a cure.
+     *
+     * @param species The species code of the cured animal.
+     */
+    public void recordCure(byte species)
+    {
+        cures[species].increment();
+    }
+
+    /**
+     * Set the population of a species.
+     *
+     * @param species A species code.
+     * @param count The number of living creatures of the species.
+     */
+    public void setPopulation(byte species, long count)
+    {
+        population.set(species, count);
+    }
+
+    /**
+     * @param species A species code.
+     * @param cause A cause of death, from DeathCause.
+     * @return The number of deaths of the species by the cause.
+     */
+    public long getDeaths(byte species, int cause)
+    {
+        return deaths[species * DeathCause.COUNT + cause].sum();
+    }
+
+    /**
+     * Publish the metrics on the platform MBean server.
+     *
+     * @param name The name under which to publish them, which
+     *             distinguishes simulations running side by side.
+     * @throws JMException If the metrics cannot be registered.
+     */
+    public void register(String name) throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName(name));
+    }
+
+    /**
+     * Withdraw the metrics from the platform MBean server.
+     *
+     * @param name The name given to register.
+     * @throws JMException If the metrics are not registered.
+     */
+    public void unregister(String name) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+    }
+
+    /**
+     * @return The number of steps simulated.
+     */
+    public long getSteps()
+    {
+        return steps.sum();
+    }
+
+    /**
+     * @return The mean time of a whole step.
+     */
+    public double getMeanStepNanos()
+    {
+        return mean(STEP);
+    }
+
+    /**
+     * @return The mean time spent letting the animals act.
+     */
+    public double getMeanAnimalActNanos()
+    {
+        return mean(ANIMALS);
+    }
+
+    /**
+     * @return The mean time spent letting the plants act.
+     */
+    public double getMeanPlantActNanos()
+    {
+        return mean(PLANTS);
+    }
+
+    /**
+     * @return The mean time spent merging births and removing the dead.
+     */
+    public double getMeanMergeNanos()
+    {
+        return mean(MERGE);
+    }
+
+    /**
+     * @return The mean time spent by the observers (views and statistics).
+     */
+    public double getMeanObserverNanos()
+    {
+        return mean(OBSERVERS);
+    }
+
+    /**
+     * @return The number of births, of every species.
+     */
+    public long getBirths()
+    {
+        return total(births);
+    }
+
+    /**
+     * @return The number of deaths of old age.
+     */
+    public long getDeathsByAge()
+    {
+        return deathsBy(DeathCause.AGE);
+    }
+
+    /**
+     * @return The number of deaths of hunger.
+     */
+    public long getDeathsByStarvation()
+    {
+        return deathsBy(DeathCause.STARVATION);
+    }
+
+    /**
+     * @return The number of deaths for lack of space.
+     */
+    public long getDeathsByOvercrowding()
+    {
+        return deathsBy(DeathCause.OVERCROWDING);
+    }
+
+    /**
+     * @return The number of creatures eaten.
+     */
+    public long getDeathsByPredation()
+    {
+        return deathsBy(DeathCause.PREDATION);
+    }
+
+    /**
+     * @return The number of deaths of disease.
+     */
+    public long getDeathsByDisease()
+    {
+        return deathsBy(DeathCause.DISEASE);
+    }
+
+    /**
+     * @return The number of infections.
+     */
+    public long getInfections()
+    {
+        return total(infections);
+    }
+
+    /**
+     * @return The number of cures.
+     */
+    public long getCures()
+    {
+        return total(cures);
+    }
+
+    /**
+     * @return The counters of every species, a row per species: its
+     *         name, population, births, infections, cures and deaths
+     *         by each cause.
+     */
+    public TabularData getSpeciesCounters()
+    {
+        TabularDataSupport table = new TabularDataSupport(SPECIES_TABLE);
+        String[] items = SPECIES_ROW.keySet().toArray(new String[0]);
+        for(byte species = 1; species < Species.COUNT; species++) {
+            Object[] values = new Object[items.length];
+            for(int i = 0; i < items.length; i++) {
+                values[i] = items[i].equals("species") ? Species.getName(species)
+                                                       : (Object) speciesItem(species, items[i]);
+            }
+            table.put(row(SPECIES_ROW, items, values));
+        }
+        return table;
+    }
+
+    /**
+     * @return The histogram of every phase, a row per phase: its name,
+     *         the number of timings and their total in nanoseconds, and
+     *         the count of each bucket, where bucket b counts times below
+     *         2^b nanoseconds and at least 2^(b-1), and the last bucket
+     *         counts the rest.
+     */
+    public TabularData getPhaseHistograms()
+    {
+        TabularDataSupport table = new TabularDataSupport(PHASE_TABLE);
+        String[] items = {"phase", "count", "sumNanos", "buckets"};
+        for(int phase = 0; phase < PHASES; phase++) {
+            long[] counts = new long[BUCKETS];
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] = buckets[phase * BUCKETS + bucket].sum();
+            }
+            Object[] values = {
+                PHASE_NAMES[phase], phaseCount[phase].sum(), phaseNanos[phase].sum(), counts
+            };
+            table.put(row(PHASE_ROW, items, values));
+        }
+        return table;
+    }
+
+    /**
+     * @return Every metric in the Prometheus text format.
+     */
+    public String dumpPrometheus()
+    {
+        StringBuilder out = new StringBuilder(8192);
+        out.append("# HELP arctic_steps_total Steps simulated.\n");
+        out.append("# TYPE arctic_steps_total counter\n");
+        out.append("arctic_steps_total ").append(getSteps()).append('\n');
+
+        out.append("# HELP arctic_step_phase_seconds Time taken by each phase of a step.\n");
+        out.append("# TYPE arctic_step_phase_seconds histogram\n");
+        for(int phase = 0; phase < PHASES; phase++) {
+            String label = "phase=\"" + PHASE_NAMES[phase] + "\"";
+            long cumulative = 0;
+            for(int bucket = 0; bucket < BUCKETS - 1; bucket++) {
+                cumulative += buckets[phase * BUCKETS + bucket].sum();
+                out.append("arctic_step_phase_seconds_bucket{").append(label)
+                   .append(",le=\"").append((1L << bucket) / 1e9).append("\"} ")
+                   .append(cumulative).append('\n');
+            }
+            cumulative += buckets[phase * BUCKETS + BUCKETS - 1].sum();
+            out.append("arctic_step_phase_seconds_bucket{").append(label)
+               .append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append("arctic_step_phase_seconds_sum{").append(label).append("} ")
+               .append(phaseNanos[phase].sum() / 1e9).append('\n');
+            out.append("arctic_step_phase_seconds_count{").append(label).append("} ")
+               .append(phaseCount[phase].sum()).append('\n');
+        }
+
+        appendSpecies(out, "arctic_births_total", "Creatures born.", births);
+        out.append("# HELP arctic_deaths_total Creatures dead, by cause.\n");
+        out.append("# TYPE arctic_deaths_total counter\n");
+        for(byte species = 1; species < Species.COUNT; species++) {
+            for(int cause = 0; cause < DeathCause.COUNT; cause++) {
+                out.append("arctic_deaths_total{species=\"").append(Species.getName(species))
+                   .append("\",cause=\"").append(DeathCause.getName(cause)).append("\"} ")
+                   .append(getDeaths(species, cause)).append('\n');
+            }
+        }
+        appendSpecies(out, "arctic_infections_total", "Animals infected.", infections);
+        appendSpecies(out, "arctic_cures_total", "Animals cured.", cures);
+
+        out.append("# HELP arctic_population Living creatures after the last step.\n");
+        out.append("# TYPE arctic_population gauge\n");
+        for(int species = 1; species < Species.COUNT; species++) {
+            out.append("arctic_population{species=\"").append(Species.getName(species))
+               .append("\"} ").append(population.get(species)).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append one counter per species to a Prometheus dump.
+     */
+    private static void appendSpecies(StringBuilder out, String metric, String help,
+                                      LongAdder[] counters)
+    {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(" counter\n");
+        for(int species = 1; species < Species.COUNT; species++) {
+            out.append(metric).append("{species=\"").append(Species.getName(species))
+               .append("\"} ").append(counters[species].sum()).append('\n');
+        }
+    }
+
+    /**
+     * @return The value of one item of the row of a species.
+     */
+    private long speciesItem(byte species, String item)
+    {
+        switch(item) {
+            case "population":
+                return population.get(species);
+            case "births":
+                return births[species].sum();
+            case "infections":
+                return infections[species].sum();
+            case "cures":
+                return cures[species].sum();
+            default:
+                String cause = item.substring("deaths.".length());
+                for(int code = 0; code < DeathCause.COUNT; code++) {
+                    if(DeathCause.getName(code).equals(cause)) {
+                        return getDeaths(species, code);
+                    }
+                }
+                throw new IllegalArgumentException("Unknown item " + item);
+        }
+    }
+
+    /**
+     * @return A row of a table published over JMX.
+     */
+    private static CompositeDataSupport row(CompositeType type, String[] items, Object[] values)
+    {
+        try {
+            return new CompositeDataSupport(type, items, values);
+        }
+        catch(OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The mean time of a phase, in nanoseconds, or 0 if it
+     *         has not been timed yet.
+     */
+    private double mean(int phase)
+    {
+        long count = phaseCount[phase].sum();
+        return count == 0 ? 0 : (double) phaseNanos[phase].sum() / count;
+    }
+
+    /**
+     * @return The deaths by a cause, of every species.
+     */
+    private long deathsBy(int cause)
+    {
+        long sum = 0;
+        for(byte species = 0; species < Species.COUNT; species++) {
+            sum += getDeaths(species, cause);
+        }
+        return sum;
+    }
+
+    /**
+     * @return The sum of some counters.
+     */
+    private static long total(LongAdder[] counters)
+    {
+        long sum = 0;
+        for(LongAdder counter : counters) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @return A new array of counters at zero.
+     */
+    private static LongAdder[] counters(int size)
+    {
+        LongAdder[] counters = new LongAdder[size];
+        for(int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * @return The JMX name of the metrics of the named simulation.
+     */
+    private static ObjectName objectName(String name) throws JMException
+    {
+        return new ObjectName(DOMAIN + ":type=SimulationMetrics,name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,101 @@
+import javax.management.openmbean.TabularData;
+
+/**
+ * The management interface of SimulationMetrics, as published over JMX.
+ * Times are averages over all steps so far, in nanoseconds; counts are
+ * totals over all steps so far.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public interface SimulationMetricsMBean
+{
+    /**
+     * @return The number of steps simulated.
+     */
+    long getSteps();
+
+    /**
+     * @return The mean time of a whole step.
+     */
+    double getMeanStepNanos();
+
+    /**
+     * @return The mean time spent letting the animals act.
+     */
+    double getMeanAnimalActNanos();
+
+    /**
+     * @return The mean time spent letting the plants act.
+     */
+    double getMeanPlantActNanos();
+
+    /**
+     * @return The mean time spent merging births and removing the dead.
+     */
+    double getMeanMergeNanos();
+
+    /**
+     * @return The mean time spent by the observers (views and statistics).
+     */
+    double getMeanObserverNanos();
+
+    /**
+     * @return The number of births, of every species.
+     */
+    long getBirths();
+
+    /**
+     * @return The number of deaths of old age.
+     */
+    long getDeathsByAge();
+
+    /**
+     * @return The number of deaths of hunger.
+     */
+    long getDeathsByStarvation();
+
+    /**
+     * @return The number of deaths for lack of space.
+     */
+    long getDeathsByOvercrowding();
+
+    /**
+     * @return The number of creatures eaten.
+     */
+    long getDeathsByPredation();
+
+    /**
+     * @return The number of deaths of disease.
+     */
+    long getDeathsByDisease();
+
+    /**
+     * @return The number of infections.
+     */
+    long getInfections();
+
+    /**
+     * @return The number of cures.
+     */
+    long getCures();
+
+    /**
+     * @return The counters of every species, a row per species keyed by
+     *         its name: population, births, infections, cures and deaths
+     *         by each cause.
+     */
+    TabularData getSpeciesCounters();
+
+    /**
+     * @return The histogram of every phase, a row per phase keyed by its
+     *         name: the number of timings, their total in nanoseconds and
+     *         the count of each power-of-two bucket.
+     */
+    TabularData getPhaseHistograms();
+
+    /**
+     * @return Every metric in the Prometheus text format.
+     */
+    String dumpPrometheus();
+}
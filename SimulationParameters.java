@@ -0,0 +1,160 @@
+/**
+ * The parameters of one simulation: how likely each species is to be
+ * created when the field is populated, how each species breeds, and
+ * the diseases going round.
+ * Every simulation has its own parameters, reached by its creatures
+ * through their field, so simulations with different parameters can
+ * run side by side.
+ *
+ * Parameters can be set by name, as "species.parameter", where the
+ * species is named as in the species table (case is ignored) and the
+ * parameter is one of creation, breedingAge, breedingProbability and
+ * maxLitter.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class SimulationParameters
+{
+    // The names of the parameters of each species.
+    public static final String CREATION = "creation";
+    public static final String BREEDING_AGE = "breedingAge";
+    public static final String BREEDING_PROBABILITY = "breedingProbability";
+    public static final String MAX_LITTER = "maxLitter";
+
+    // The probability that a creature of each species will be created
+    // in any given grid position, indexed by species code.
+    private double[] creationProbability;
+    // The age at which each species can start to breed.
+    private int[] breedingAge;
+    // The likelihood of a creature of each species breeding.
+    private double[] breedingProbability;
+    // The maximum number of births of each species.
+    private int[] maxLitterSize;
+    // The diseases that can infect the animals.
+    private DiseaseRegistry diseases;
+
+    /**
+     * Create the usual parameters of the simulation, as given by the
+     * species table.
+     */
+    public SimulationParameters()
+    {
+        creationProbability = new double[Species.COUNT];
+        breedingAge = new int[Species.COUNT];
+        breedingProbability = new double[Species.COUNT];
+        maxLitterSize = new int[Species.COUNT];
+
+        for(byte species = 1; species < Species.COUNT; species++) {
+            setSpecies(species, Species.getCreationProbability(species),
+                       Species.getBreedingAge(species),
+                       Species.getBreedingProbability(species),
+                       Species.getMaxLitterSize(species));
+        }
+
+        diseases = DiseaseRegistry.createDefault();
+    }
+
+    /**
+     * Create a copy of other parameters.
+     *
+     * @param other The parameters to copy.
+     */
+    public SimulationParameters(SimulationParameters other)
+    {
+        creationProbability = other.creationProbability.clone();
+        breedingAge = other.breedingAge.clone();
+        breedingProbability = other.breedingProbability.clone();
+        maxLitterSize = other.maxLitterSize.clone();
+        diseases = new DiseaseRegistry(other.diseases);
+    }
+
+    /**
+     * Set a parameter by name.
+     *
+     * @param name The name of the parameter, such as "seal.creation".
+     * @param value The new value. Ages and litter sizes are rounded.
+     * @throws IllegalArgumentException If there is no such parameter.
+     */
+    public void set(String name, double value)
+    {
+        int dot = name.indexOf('.');
+        byte species = dot < 0 ? Species.EMPTY : Species.getCode(name.substring(0, dot));
+        if(species == Species.EMPTY) {
+            throw new IllegalArgumentException("Unknown parameter " + name);
+        }
+        String parameter = name.substring(dot + 1);
+        if(parameter.equalsIgnoreCase(CREATION)) {
+            creationProbability[species] = value;
+        }
+        else if(parameter.equalsIgnoreCase(BREEDING_AGE)) {
+            breedingAge[species] = (int) Math.round(value);
+        }
+        else if(parameter.equalsIgnoreCase(BREEDING_PROBABILITY)) {
+            breedingProbability[species] = value;
+        }
+        else if(parameter.equalsIgnoreCase(MAX_LITTER)) {
+            maxLitterSize[species] = (int) Math.round(value);
+        }
+        else {
+            throw new IllegalArgumentException("Unknown parameter " + name);
+        }
+    }
+
+    /**
+     * @param species A species code.
+     * @return The probability of creating the species in a grid position.
+     */
+    public double getCreationProbability(byte species)
+    {
+        return creationProbability[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The age at which the species can start to breed.
+     */
+    public int getBreedingAge(byte species)
+    {
+        return breedingAge[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The likelihood of the species breeding.
+     */
+    public double getBreedingProbability(byte species)
+    {
+        return breedingProbability[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The maximum number of births of the species.
+     */
+    public int getMaxLitterSize(byte species)
+    {
+        return maxLitterSize[species];
+    }
+
+    /**
+     * @return The diseases that can infect the animals. Diseases may
+     *         be added before the simulation starts.
+     */
+    public DiseaseRegistry getDiseases()
+    {
+        return diseases;
+    }
+
+    /**
+     * Set every parameter of one species.
+     */
+    private void setSpecies(byte species, double creation, int age,
+                            double probability, int litter)
+    {
+        creationProbability[species] = creation;
+        breedingAge[species] = age;
+        breedingProbability[species] = probability;
+        maxLitterSize[species] = litter;
+    }
+}
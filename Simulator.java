@@ -1,10 +1,18 @@
 import java.util.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.awt.Color;
-import java.util.Random;
+import java.awt.GraphicsEnvironment;
+import javax.management.JMException;
 
 /**
  * A predator-prey simulator of the Arctic Ocean,
  * based on a rectangular field containing animals and plants.
+ * The simulator can run with a graphical view, or headless with
+ * no view at all; any view is just one of its observers.
  * 
  * @author David J. Barnes and Michael Kölling
  * @author Leticia Piucco Marques and Ruobing Zhao
@@ -17,24 +25,49 @@ public class Simulator
     private static final int DEFAULT_WIDTH = 240;
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 160;
-    // The probability that the animals  will be created in any given grid position.
-    private static final double SEAL_CREATION_PROBABILITY = 0.05;
-    private static final double COD_CREATION_PROBABILITY = 0.06;
-    private static final double POLARBEAR_CREATION_PROBABILITY = 0.05;
-    private static final double WHALE_CREATION_PROBABILITY = 0.05;
-    private static final double PLANKTON_CREATION_PROBABILITY = 0.06;
-    private static final double ALGAE_CREATION_PROBABILITY = 0.09;
-
-    // Lists of animals and plants in the field.
-    private List<Animal> animals;
+    // The pause between steps when a graphical view is attached.
+    private static final int VIEW_STEP_DELAY = 50;
+    // The steps between checkpoints unless told otherwise.
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    // The bytes of state saved for the simulation, and for each creature
+    // besides its own state.
+    private static final int STATE_HEADER_SIZE = 8 + 4 + 4 + 1 + 7 + 4 + 4 + 4 + 4;
+    private static final int CREATURE_HEADER_SIZE = 1 + 8 + 8;
+
+    // The animals in the field, in buckets indexed by their activity
+    // mask, and the buckets of the animals active in the current step.
+    private List<List<Animal>> animals;
+    private List<List<Animal>> activeAnimals;
+    // The plants in the field.
     private List<Plant> plants;
+    // Buffers for the animals and plants born during a step.
+    private List<Animal> newAnimals;
+    private List<Plant> newPlants;
+    // Buffers for the creatures dying in each step of a snow spell.
+    private List<List<Life>> dying;
 
     private Field field;        // The current state of the field.
     private int step;           // The current step of the simulation.
-    private SimulatorView view; // A graphical view of the simulation.
+    private SimulatorView view; // A graphical view of the simulation, or null.
+    private FieldStats stats;   // Statistics used to decide viability.
+    private int stepDelay;      // Pause after each step, in milliseconds.
+    // Whether simulate() runs snow spells in one pass.
+    private boolean fastForward;
+
+    // Observers told about the field after every step.
+    private List<SimulatorObserver> observers;
+    // Runs steps on several threads, or null to run them on this one.
+    private TiledStepper stepper;
+    // Factor applied to every creation probability when populating.
+    private double density = 1.0;
+    // Where checkpoints are saved, or null for none, and how often.
+    private Checkpoint checkpoint;
+    private int checkpointInterval;
 
+    private Randomizer randomizer; // The source of all random numbers.
+    private SimulationParameters parameters; // Creation and breeding of each species.
     private Weather weather;    // The weather conditions
-    private Disease disease;    // The diseases that can infect animals
+    private DiseaseRegistry diseases; // The diseases that can infect animals
     private int counter;        // A counter for updating the daytime and weather
 
     // Current state of the day.
@@ -49,12 +82,55 @@ public class Simulator
     }
 
     /**
-     * Create a simulation field with the given size.
+     * Create a simulation field with the given size and a graphical view.
      * 
      * @param depth Depth of the field. Must be greater than zero.
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width)
+    {
+        this(depth, width, false);
+    }
+
+    /**
+     * Create a simulation field with the given size and the default seed.
+     * A headless simulator builds no view and does not pause between steps.
+     * 
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless If true, run without a graphical view.
+     */
+    public Simulator(int depth, int width, boolean headless)
+    {
+        this(depth, width, headless, Randomizer.SEED);
+    }
+
+    /**
+     * Create a simulation field with the given size.
+     * Runs with the same seed perform exactly the same.
+     * 
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless If true, run without a graphical view.
+     * @param seed The seed for all random numbers of the run.
+     */
+    public Simulator(int depth, int width, boolean headless, long seed)
+    {
+        this(depth, width, headless, seed, new SimulationParameters());
+    }
+
+    /**
+     * Create a simulation field with the given size, seed and parameters.
+     * Simulators share no state, so several can run at the same time.
+     * 
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param headless If true, run without a graphical view.
+     * @param seed The seed for all random numbers of the run.
+     * @param parameters The parameters of the species.
+     */
+    public Simulator(int depth, int width, boolean headless, long seed,
+                     SimulationParameters parameters)
     {
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
@@ -63,25 +139,287 @@ public class Simulator
             width = DEFAULT_WIDTH;
         }
 
-        animals = new ArrayList<>();
+        animals = new ArrayList<>(Animal.ACTIVITIES);
+        for(int activity = 0; activity < Animal.ACTIVITIES; activity++) {
+            animals.add(new ArrayList<>());
+        }
+        activeAnimals = new ArrayList<>(Animal.ACTIVITIES);
         plants = new ArrayList<>();
-        field = new Field(depth, width);
-        weather = new Weather();
-        disease = new Disease();
-
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width);
-        view.setColor(Cod.class, Color.ORANGE);
-        view.setColor(Seal.class, Color.LIGHT_GRAY);
-        view.setColor(PolarBear.class, Color.RED);
-        view.setColor(Whale.class, Color.BLUE);
-        view.setColor(Plankton.class, Color.pink);
-        view.setColor(Algae.class, Color.GREEN);
+        newAnimals = new ArrayList<>();
+        newPlants = new ArrayList<>();
+        dying = new ArrayList<>();
+        randomizer = new Randomizer(seed);
+        this.parameters = parameters;
+        field = new Field(depth, width, randomizer, parameters);
+        diseases = parameters.getDiseases();
+        stats = new FieldStats();
+        observers = new ArrayList<>();
+
+        if(!headless) {
+            // Create a view of the state of each location in the field.
+            view = new SimulatorView(depth, width);
+            for(byte species = 1; species < Species.COUNT; species++) {
+                view.setColor(species, new Color(Species.getColor(species)));
+            }
+            addObserver(view);
+            stepDelay = VIEW_STEP_DELAY;
+        }
+        else {
+            fastForward = true;
+        }
 
         // Setup a valid starting point.
         reset();
     }
 
+    /**
+     * Run a simulation from the command line.
+     * Arguments: [--headless] [--threads=n] [--checkpoint=file]
+     * [--checkpoint-every=n] [--resume=file] [--metrics=file] [--jmx]
+     * [--record=file] [--step-by-step] [--replay=file]
+     * [--keyframe-every=n] [--seek=step] [steps] [depth width]
+     * The simulation runs headless when asked to, or when no display
+     * is available. A resumed simulation must be given the size of the
+     * field it was saved from. The metrics are written to the file in
+     * the Prometheus text format at the end of the run, and published
+     * over JMX while it runs if asked to. The population after each
+     * step is recorded to a file, as comma separated values if its name
+     * ends in ".csv" and in binary otherwise. Snow spells are run in
+     * one pass, unless asked not to or the population is recorded.
+     * A run is logged to a replay file with a keyframe every given
+     * number of steps; given a step to seek as well, the simulation is
+     * brought to that step of the logged run instead, and runs from
+     * there. A headless run ends by printing how fast it ran and the
+     * population of each species.
+     * 
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean headless = GraphicsEnvironment.isHeadless();
+        int threads = 0;
+        String checkpointFile = null;
+        int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        String resumeFile = null;
+        String metricsFile = null;
+        String recordFile = null;
+        boolean jmx = false;
+        boolean stepByStep = false;
+        String replayFile = null;
+        int keyframeInterval = ReplayLog.DEFAULT_INTERVAL;
+        int seekStep = -1;
+        List<Integer> numbers = new ArrayList<>();
+        for(String arg : args) {
+            if(arg.equals("--headless")) {
+                headless = true;
+            }
+            else if(arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            }
+            else if(arg.startsWith("--checkpoint=")) {
+                checkpointFile = arg.substring("--checkpoint=".length());
+            }
+            else if(arg.startsWith("--checkpoint-every=")) {
+                checkpointInterval = Integer.parseInt(arg.substring("--checkpoint-every=".length()));
+            }
+            else if(arg.startsWith("--resume=")) {
+                resumeFile = arg.substring("--resume=".length());
+            }
+            else if(arg.startsWith("--metrics=")) {
+                metricsFile = arg.substring("--metrics=".length());
+            }
+            else if(arg.startsWith("--record=")) {
+                recordFile = arg.substring("--record=".length());
+            }
+            else if(arg.equals("--jmx")) {
+                jmx = true;
+            }
+            else if(arg.equals("--step-by-step")) {
+                stepByStep = true;
+            }
+            else if(arg.startsWith("--replay=")) {
+                replayFile = arg.substring("--replay=".length());
+            }
+            else if(arg.startsWith("--keyframe-every=")) {
+                keyframeInterval = Integer.parseInt(arg.substring("--keyframe-every=".length()));
+            }
+            else if(arg.startsWith("--seek=")) {
+                seekStep = Integer.parseInt(arg.substring("--seek=".length()));
+            }
+            else {
+                numbers.add(Integer.parseInt(arg));
+            }
+        }
+        int steps = numbers.size() > 0 ? numbers.get(0) : 500;
+        Simulator simulator;
+        if(numbers.size() > 2) {
+            simulator = new Simulator(numbers.get(1), numbers.get(2), headless);
+        }
+        else {
+            simulator = new Simulator(DEFAULT_DEPTH, DEFAULT_WIDTH, headless);
+        }
+        if(resumeFile != null) {
+            simulator.restore(resumeFile);
+        }
+        if(jmx) {
+            try {
+                simulator.getMetrics().register("main");
+            }
+            catch(JMException e) {
+                System.out.println("Could not publish the metrics: " + e.getMessage());
+            }
+        }
+        PopulationRecorder recorder = null;
+        if(recordFile != null) {
+            recorder = new PopulationRecorder(recordFile, PopulationRecorder.formatOf(recordFile));
+            simulator.addObserver(recorder);
+            stepByStep = true;
+        }
+        if(stepByStep) {
+            simulator.setFastForward(false);
+        }
+        simulator.setThreads(threads);
+        ReplayLog replay = null;
+        if(replayFile != null && seekStep >= 0) {
+            ReplayLog.seek(replayFile, simulator, seekStep);
+        }
+        else if(replayFile != null) {
+            replay = new ReplayLog(replayFile, simulator, keyframeInterval);
+            simulator.addObserver(replay);
+        }
+        simulator.setCheckpoints(checkpointFile, checkpointInterval);
+        long start = System.nanoTime();
+        int done = simulator.simulate(steps);
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+        if(recorder != null) {
+            recorder.close();
+        }
+        if(replay != null) {
+            replay.close();
+        }
+        simulator.setCheckpoints(null, 0);
+        simulator.setThreads(0);
+        if(headless) {
+            System.out.printf("Simulated %d steps in %d ms (%.1f steps/s)%n",
+                              done, elapsed / 1000000, done * 1e9 / elapsed);
+            System.out.println(simulator.getPopulationDetails());
+        }
+        if(metricsFile != null) {
+            Files.write(Paths.get(metricsFile),
+                        simulator.getMetrics().dumpPrometheus().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Attach an observer that is told about the field after every step.
+     * 
+     * @param observer The observer to attach.
+     */
+    public void addObserver(SimulatorObserver observer)
+    {
+        observers.add(observer);
+    }
+
+    /**
+     * Set the pause after each step. A view is easier to follow with a
+     * short pause; headless runs should use no pause at all.
+     * 
+     * @param millisec The pause, in milliseconds.
+     */
+    public void setStepDelay(int millisec)
+    {
+        stepDelay = millisec;
+    }
+
+    /**
+     * Choose whether simulate() runs the steps of a snow spell in one
+     * pass, which takes the same course but tells the observers about
+     * the field only at the end of the spell. It does so by default
+     * unless a graphical view is attached.
+     * 
+     * @param fastForward true to run snow spells in one pass.
+     */
+    public void setFastForward(boolean fastForward)
+    {
+        this.fastForward = fastForward;
+    }
+
+    /**
+     * Choose how the steps of the simulation are executed.
+     * With zero threads, every creature acts in turn on the calling
+     * thread. Otherwise the field is split into tiles which are updated
+     * by a fork/join pool with the given number of threads. Runs on
+     * tiles are the same whatever the number of threads, but differ
+     * from runs on the calling thread alone.
+     * 
+     * @param threads The number of worker threads, or 0 for none.
+     */
+    public void setThreads(int threads)
+    {
+        if(stepper != null) {
+            stepper.shutdown();
+            stepper = null;
+        }
+        if(threads > 0) {
+            stepper = new TiledStepper(this, field, TiledStepper.DEFAULT_TILE_SIZE, threads);
+        }
+    }
+
+    /**
+     * @return true if the steps are executed on tiles, by setThreads()
+     *         with some threads, and false if on the calling thread.
+     */
+    public boolean isTiled()
+    {
+        return stepper != null;
+    }
+
+    /**
+     * Scale the probability of creating each animal and plant when the
+     * field is populated. Takes effect at the next reset.
+     * 
+     * @param density The factor, where 1.0 gives the usual population.
+     */
+    public void setPopulationDensity(double density)
+    {
+        this.density = density;
+    }
+
+    /**
+     * Save a checkpoint of the simulation every given number of steps.
+     * Checkpoints are written in the background; any checkpoint still
+     * being written when this is called is finished first.
+     * 
+     * @param file The checkpoint file, or null to stop saving checkpoints.
+     * @param interval The steps between checkpoints.
+     */
+    public void setCheckpoints(String file, int interval)
+    {
+        if(checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
+        }
+        if(file != null && interval > 0) {
+            checkpoint = new Checkpoint(file);
+            checkpointInterval = interval;
+        }
+    }
+
+    /**
+     * Continue the simulation from a checkpoint. The field must have
+     * the size of the field that was saved. From there on the
+     * simulation takes the same course as the one saved, provided it
+     * is run with the same engine and parameters.
+     * 
+     * @param file The checkpoint file.
+     * @throws IOException If the checkpoint cannot be read or does not
+     *                     fit this simulation.
+     */
+    public void restore(String file) throws IOException
+    {
+        readState(Checkpoint.read(file));
+    }
+
     /**
      * Run the simulation from its current state for a reasonably long period.
      */
@@ -95,14 +433,65 @@ public class Simulator
      * Stop before the given number of steps if it ceases to be viable.
      * 
      * @param numSteps The number of steps to run for.
+     * @return The number of steps run.
      */
-    public void simulate(int numSteps)
+    public int simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
+        int done = 0;
+        while(done < numSteps && isViable()) {
             simulateOneStep();
-            delay(50);
+            done++;
+            if(fastForward) {
+                done += skipSnowSpell(numSteps - done);
+            }
+            if(stepDelay > 0) {
+                delay(stepDelay);
+            }
         }
-    }    
+        return done;
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * 
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        return stats.isViable(field);
+    }
+
+    /**
+     * @return A description of the population of each species.
+     */
+    public String getPopulationDetails()
+    {
+        return stats.getPopulationDetails(field);
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The timings and event counts of the simulation.
+     */
+    public SimulationMetrics getMetrics()
+    {
+        return field.getMetrics();
+    }
+
+    /**
+     * @return The field holding the animals and plants.
+     */
+    public Field getField()
+    {
+        return field;
+    }
 
     /**
      * Run the simulation from its current state for a single step.
@@ -110,73 +499,535 @@ public class Simulator
      */
     public void simulateOneStep()
     {
+        SimulationMetrics metrics = field.getMetrics();
+        long start = System.nanoTime();
+        step++;
+        randomizer.setStep(step);
+
         //Update daytime and weather
         conditions();
         
-        step++;
-        
-        // Provide space for newborn animals and plants.
-        List<Animal> newAnimals = new ArrayList<>(); 
-        List<Plant> newPlants = new ArrayList<>();
+        // Empty the buffers for newborn animals and plants.
+        newAnimals.clear();
+        newPlants.clear();
         
-        // Let all animal act.
-        for(Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-
-            //Might result in the animal being infected
-            if(animal.canBeInfected()) {
-                disease.infectAnimal(animal,view);
-            }
-            
-            // Update condition of infected animals
-            animal.infectAndCure(view);
-            
-            //Act during the day
-            if(day){
-                //Act when according to the current weather
-                if(weather.isSunny() || weather.isRaining()){
-                    animal.dayAct(newAnimals);
-                }
-                else if(weather.isSnowing()){
-                    animal.snowAct();
-                }
+        // The animals that are not active in this period only rest,
+        // which involves no other creature, so they all do it first:
+        // diseases take their course, then the stores of the resting
+        // species age all of their animals at once.
+        // Nobody joins or leaves the lists until the end of the step.
+        long phase = System.nanoTime();
+        int period = getActivePeriod();
+        activeAnimals.clear();
+        for(int activity = 0; activity < Animal.ACTIVITIES; activity++) {
+            List<Animal> bucket = animals.get(activity);
+            if((activity & period) != 0) {
+                activeAnimals.add(bucket);
             }
-            //Act during the night
-            else{
-                animal.nightAct(newAnimals);
-            }  
-            
-            if(! animal.isAlive()) {
-                it.remove();
+            else if(diseases.size() > 0) {
+                for(int i = 0; i < bucket.size(); i++) {
+                    treatAnimal(bucket.get(i));
+                }
             }
         }
- 
-        // Let all plant act.
-        for(Iterator<Plant> it = plants.iterator(); it.hasNext(); ) {
-            Plant plant = it.next();
-            
-            //Act according to current weather
-            if(weather.isRaining()){
-                plant.rainAct(newPlants);
+        for(byte species = 1; species < Species.COUNT; species++) {
+            CreatureStore store = field.getStore(species);
+            if(store.holdsAnimals() && (Species.getActivity(species) & period) == 0) {
+                store.rest();
             }
-            else if(weather.isSnowing()){
-                plant.snowAct();
+        }
+
+        if(stepper != null) {
+            // Let the tiles of the field act in parallel.
+            stepper.actAnimals(activeAnimals, newAnimals);
+        }
+        else {
+            // Let the active animals act.
+            for(List<Animal> bucket : activeAnimals) {
+                for(int i = 0; i < bucket.size(); i++) {
+                    actAnimal(bucket.get(i), newAnimals);
+                }
             }
-            else{
-                plant.act(newPlants);
+        }
+        long animalsDone = System.nanoTime();
+        metrics.recordPhase(SimulationMetrics.ANIMALS, animalsDone - phase);
+
+        if(weather.isSnowing() && !weather.isRaining()) {
+            // Plants only grow when it snows (and rain, which is
+            // checked first, does not fall too), all at once.
+            for(byte species = 1; species < Species.COUNT; species++) {
+                CreatureStore store = field.getStore(species);
+                if(store.holdsPlants()) {
+                    store.grow();
+                }
             }
-            if(! plant.isAlive()) {
-                it.remove();
+        }
+        else if(stepper != null) {
+            stepper.actPlants(plants, newPlants);
+        }
+        else {
+            // Let all plant act.
+            for(int i = 0; i < plants.size(); i++) {
+                actPlant(plants.get(i), newPlants);
             }
         }
+        metrics.recordPhase(SimulationMetrics.PLANTS, System.nanoTime() - animalsDone);
+        finishSteps(1, start);
+    }
+
+    /**
+     * Finish the steps just simulated: merge the newborns, drop the
+     * dead, tell the observers and save a checkpoint when one is due.
+     * The merge and the observers run, and are timed, once for all the
+     * steps; the time of the whole is shared out among the steps.
+     * 
+     * @param steps The number of steps simulated.
+     * @param start When the steps started, from System.nanoTime().
+     */
+    private void finishSteps(int steps, long start)
+    {
+        SimulationMetrics metrics = field.getMetrics();
 
-        // Add the newly born animals to the main lists.
-        animals.addAll(newAnimals);
+        // Add the newly born animals to the main lists, then drop
+        // everything that died during the step (newborns included) in
+        // one pass.
+        long merge = System.nanoTime();
+        recordBirths(metrics);
+        for(int i = 0; i < newAnimals.size(); i++) {
+            addAnimal(newAnimals.get(i));
+        }
         plants.addAll(newPlants);
+        for(List<Animal> bucket : animals) {
+            removeDead(bucket);
+        }
+        removeDead(plants);
+        field.releaseEmptyChunks();
+        assert isConsistent() : "Field and creature lists disagree at step " + step;
+        long observe = System.nanoTime();
+        metrics.recordPhase(SimulationMetrics.MERGE, observe - merge);
+
+        notifyObservers();
+        long end = System.nanoTime();
+        metrics.recordPhase(SimulationMetrics.OBSERVERS, end - observe);
+        // The steps of a spell run in one pass count as equally long.
+        metrics.recordPhase(SimulationMetrics.STEP, end - start, steps);
+        metrics.recordSteps(steps);
+        for(byte species = 1; species < Species.COUNT; species++) {
+            metrics.setPopulation(species, field.getCount(species));
+        }
 
-        view.showStatus(step, field, weather, day);
+        if(checkpoint != null && step % checkpointInterval == 0) {
+            if(!checkpoint.save(this)) {
+                System.out.println("Checkpoint at step " + step
+                                   + " skipped: the last one is still being written.");
+            }
+        }
     } 
 
+    /**
+     * Run the rest of a snow spell in one pass, if the current step is
+     * in one. By day in the snow no animal is active, so until the
+     * weather next changes every animal only rests and every plant only
+     * grows, and nobody moves, eats or is born. Only diseases are left
+     * to take their course step by step, as they do in simulateOneStep();
+     * the steps each creature will die of old age or hunger in are
+     * worked out beforehand, and the stores are moved on to the end of
+     * the spell at once. The course of the simulation is the same as
+     * step by step, but the observers are told about the field only at
+     * the end of the spell.
+     * The spell is cut short at a checkpoint, or where the simulation
+     * ceases to be viable.
+     * 
+     * @param maxSteps The most steps to run.
+     * @return The number of steps run, or 0 if not in a snow spell.
+     */
+    private int skipSnowSpell(int maxSteps)
+    {
+        // The conditions change when the counter reaches 7.
+        int steps = Math.min(maxSteps, 6 - counter);
+        if(checkpoint != null) {
+            steps = Math.min(steps, checkpointInterval - step % checkpointInterval);
+        }
+        if(steps <= 0 || getActivePeriod() != 0 || !isViable()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        newAnimals.clear();
+        newPlants.clear();
+        while(dying.size() < steps) {
+            dying.add(new ArrayList<>());
+        }
+        for(byte species = 1; species < Species.COUNT; species++) {
+            field.getStore(species).findDeaths(steps, dying);
+        }
+
+        int done = 0;
+        while(done < steps && (done == 0 || isViable())) {
+            done++;
+            step++;
+            counter++;
+            randomizer.setStep(step);
+            if(diseases.size() > 0) {
+                for(List<Animal> bucket : animals) {
+                    for(int i = 0; i < bucket.size(); i++) {
+                        treatAnimal(bucket.get(i));
+                    }
+                }
+            }
+            for(Life creature : dying.get(done - 1)) {
+                if(creature.isAlive()) {
+                    creature.setDead(field.getStore(creature.getSpecies()).causeOfDeath(creature, done));
+                }
+            }
+        }
+        for(byte species = 1; species < Species.COUNT; species++) {
+            field.getStore(species).advance(done);
+        }
+        // Empty the buffers, keeping no dead creature alive in them.
+        for(int i = 0; i < steps; i++) {
+            dying.get(i).clear();
+        }
+        field.getMetrics().recordPhase(SimulationMetrics.ANIMALS, System.nanoTime() - start, done);
+        finishSteps(done, start);
+        return done;
+    }
+
+    /**
+     * Count the creatures born during the step, by species.
+     * 
+     * @param metrics Where the births are counted.
+     */
+    private void recordBirths(SimulationMetrics metrics)
+    {
+        int[] born = new int[Species.COUNT];
+        for(int i = 0; i < newAnimals.size(); i++) {
+            born[newAnimals.get(i).getSpecies()]++;
+        }
+        for(int i = 0; i < newPlants.size(); i++) {
+            born[newPlants.get(i).getSpecies()]++;
+        }
+        for(byte species = 1; species < Species.COUNT; species++) {
+            if(born[species] > 0) {
+                metrics.recordBirths(species, born[species]);
+            }
+        }
+    }
+
+    /**
+     * Return the period the animals are in during the current step:
+     * by day unless it is snowing, when nobody is active, or by night.
+     * 
+     * @return ACTIVE_BY_DAY, ACTIVE_BY_NIGHT, or 0 if no animal is active.
+     */
+    private int getActivePeriod()
+    {
+        if(!day) {
+            return Animal.ACTIVE_BY_NIGHT;
+        }
+        return weather.isSunny() || weather.isRaining() ? Animal.ACTIVE_BY_DAY : 0;
+    }
+
+    /**
+     * Let one animal that is not active in the current period catch,
+     * suffer from or be cured of a disease. It rests afterwards, with
+     * the rest of its species.
+     * 
+     * @param animal The animal to treat.
+     */
+    private void treatAnimal(Animal animal)
+    {
+        if(! animal.isAlive()) {
+            return;
+        }
+        diseases.infectAnimal(animal);
+        animal.infectAndCure();
+    }
+
+    /**
+     * Add an animal to the bucket of its activity.
+     * 
+     * @param animal The animal to add.
+     */
+    private void addAnimal(Animal animal)
+    {
+        animals.get(animal.getActivity()).add(animal);
+    }
+
+    /**
+     * @return The number of animals in the buckets.
+     */
+    private int getAnimalCount()
+    {
+        int count = 0;
+        for(List<Animal> bucket : animals) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    /**
+     * Let one animal act for the current step.
+     * An animal that has already died during this step does nothing.
+     * 
+     * @param animal The animal to act.
+     * @param newAnimals A list to receive newly born animals.
+     */
+    void actAnimal(Animal animal, List<Animal> newAnimals)
+    {
+        if(! animal.isAlive()) {
+            return;
+        }
+
+        //Might result in the animal being infected
+        diseases.infectAnimal(animal);
+        
+        // Update condition of infected animals
+        animal.infectAndCure();
+        if(! animal.isAlive()) {
+            return;
+        }
+        
+        // Animals only act in an active period: by day when it is sunny
+        // or raining, or by night. In the snow they all rest instead.
+        if(day){
+            animal.dayAct(newAnimals);
+        }
+        else{
+            animal.nightAct(newAnimals);
+        }  
+    }
+
+    /**
+     * Let one plant act for the current step.
+     * A plant that has already been eaten during this step does nothing.
+     * 
+     * @param plant The plant to act.
+     * @param newPlants A list to receive newly born plants.
+     */
+    void actPlant(Plant plant, List<Plant> newPlants)
+    {
+        if(! plant.isAlive()) {
+            return;
+        }
+
+        //Act according to current weather. Plants only act when it does
+        //not snow, or rains as well; otherwise they all grow at once.
+        if(weather.isRaining()){
+            plant.rainAct(newPlants);
+        }
+        else{
+            plant.act(newPlants);
+        }
+    }
+
+    /**
+     * Remove the dead from a list of creatures, keeping the survivors
+     * in their order. Each survivor is moved at most once, however
+     * many creatures died.
+     * 
+     * @param creatures The list to compact.
+     */
+    private static <T extends Life> void removeDead(List<T> creatures)
+    {
+        int kept = 0;
+        for(int i = 0; i < creatures.size(); i++) {
+            T creature = creatures.get(i);
+            if(creature.isAlive()) {
+                creatures.set(kept++, creature);
+            }
+            else {
+                creature.release();
+            }
+        }
+        creatures.subList(kept, creatures.size()).clear();
+    }
+
+    /**
+     * Check that every creature in the lists is alive and found in the
+     * field at its own location, and that the field holds no other
+     * creatures. Also check the species counts, the infection status
+     * and the bitplanes kept by the field.
+     * 
+     * @return true if the field and the creature lists agree.
+     */
+    private boolean isConsistent()
+    {
+        if(!stats.isConsistent(field) || !field.hasConsistentPlanes()) {
+            return false;
+        }
+        // The counts of the field were just checked against its cells.
+        long occupied = 0;
+        for(int species = 1; species < Species.COUNT; species++) {
+            occupied += field.getCount(species);
+        }
+        int alive = 0;
+        for(int activity = 0; activity < Animal.ACTIVITIES; activity++) {
+            for(Animal animal : animals.get(activity)) {
+                if(!animal.isAlive() || animal.getActivity() != activity
+                   || field.getObjectAt(animal.getLocation()) != animal
+                   || field.getStatusAt(field.cellOf(animal.getLocation())) != animal.getStatus()) {
+                    return false;
+                }
+                alive++;
+            }
+        }
+        for(Plant plant : plants) {
+            if(!plant.isAlive() || field.getObjectAt(plant.getLocation()) != plant) {
+                return false;
+            }
+            alive++;
+        }
+        return occupied == alive;
+    }
+
+    /**
+     * @return The bytes of state written by writeState.
+     */
+    int getStateSize()
+    {
+        return STATE_HEADER_SIZE
+               + getAnimalCount() * (CREATURE_HEADER_SIZE + Animal.STATE_SIZE)
+               + plants.size() * (CREATURE_HEADER_SIZE + Plant.STATE_SIZE);
+    }
+
+    /**
+     * Write the full state of the simulation, for a checkpoint.
+     * The creatures are written in the order of their lists, which
+     * restoring keeps.
+     * 
+     * @param buffer The buffer to write to.
+     */
+    void writeState(ByteBuffer buffer)
+    {
+        buffer.putLong(randomizer.getSeed());
+        buffer.putInt(step);
+        buffer.putInt(counter);
+        buffer.put((byte) (day ? 1 : 0));
+        weather.writeState(buffer);
+        buffer.putInt(field.getDepth());
+        buffer.putInt(field.getWidth());
+        buffer.putInt(getAnimalCount());
+        buffer.putInt(plants.size());
+        for(List<Animal> bucket : animals) {
+            for(Animal animal : bucket) {
+                writeCreature(animal, buffer);
+            }
+        }
+        for(Plant plant : plants) {
+            writeCreature(plant, buffer);
+        }
+    }
+
+    /**
+     * Write one creature, for a checkpoint.
+     * 
+     * @param creature The creature to write.
+     * @param buffer The buffer to write to.
+     */
+    private void writeCreature(Life creature, ByteBuffer buffer)
+    {
+        buffer.put(creature.getSpecies());
+        buffer.putLong(field.cellOf(creature.getLocation()));
+        buffer.putLong(creature.getId());
+        creature.writeState(buffer);
+    }
+
+    /**
+     * Replace the state of the simulation with the state written by
+     * writeState, and show it to the observers.
+     * 
+     * @param buffer The buffer to read from.
+     * @throws IOException If the state is for a field of another size,
+     *                     or holds species the species table lacks.
+     */
+    void readState(ByteBuffer buffer) throws IOException
+    {
+        long seed = buffer.getLong();
+        int savedStep = buffer.getInt();
+        int savedCounter = buffer.getInt();
+        boolean savedDay = buffer.get() != 0;
+        Weather savedWeather = new Weather(randomizer);
+        savedWeather.readState(buffer);
+        int depth = buffer.getInt();
+        int width = buffer.getInt();
+        if(depth != field.getDepth() || width != field.getWidth()) {
+            throw new IOException("The checkpoint is for a field of " + depth + "x" + width);
+        }
+
+        for(List<Animal> bucket : animals) {
+            bucket.clear();
+        }
+        plants.clear();
+        field.clear();
+        randomizer.setSeed(seed);
+        step = savedStep;
+        randomizer.setStep(step);
+        counter = savedCounter;
+        day = savedDay;
+        weather = savedWeather;
+
+        int animalCount = buffer.getInt();
+        int plantCount = buffer.getInt();
+        for(int i = 0; i < animalCount + plantCount; i++) {
+            byte species = buffer.get();
+            Location location = field.locationOf(buffer.getLong());
+            long id = buffer.getLong();
+            if(species <= Species.EMPTY || species >= Species.COUNT) {
+                throw new IOException("The checkpoint holds unknown species " + species);
+            }
+            Life creature = createCreature(species, false, location, id);
+            creature.readState(buffer);
+            addCreature(creature);
+        }
+        assert isConsistent() : "Field and creature lists disagree after restoring step " + step;
+
+        notifyObservers();
+    }
+
+    /**
+     * Create a creature of the given species, as described by the
+     * species table.
+     * 
+     * @param species The species code of the creature.
+     * @param randomAge If true, the creature will have random age and
+     *                  hunger level; otherwise it is new born.
+     * @param location Where the creature is placed.
+     * @param id The number identifying the creature's random draws.
+     * @return The new creature.
+     */
+    private Life createCreature(byte species, boolean randomAge, Location location, long id)
+    {
+        if(Species.isPlant(species)) {
+            return new Plant(species, randomAge, field, location, id);
+        }
+        return new Animal(species, randomAge, field, location, id);
+    }
+
+    /**
+     * Add a creature to the list of animals or of plants.
+     * 
+     * @param creature The creature to add.
+     */
+    private void addCreature(Life creature)
+    {
+        if(creature instanceof Animal) {
+            addAnimal((Animal) creature);
+        }
+        else {
+            plants.add((Plant) creature);
+        }
+    }
+
+    /**
+     * Show the field to every observer.
+     */
+    private void notifyObservers()
+    {
+        for(SimulatorObserver observer : observers) {
+            observer.stepCompleted(step, field, weather, day);
+        }
+    }
+
     /**
      * Change the daytime and weather every 7 steps.
      */
@@ -195,62 +1046,44 @@ public class Simulator
     public void reset()
     {
         step = 0;
-        animals.clear();
+        randomizer.setStep(step);
+        for(List<Animal> bucket : animals) {
+            bucket.clear();
+        }
+        plants.clear();
+        field.clear();
+        counter = 0;
+        day = true;
+        weather = new Weather(randomizer);
         populate();
 
-        // Show the starting state in the view.
-        view.showStatus(step, field, weather, day);
+        // Show the starting state to the observers.
+        notifyObservers();
     }
 
     /**
-     * Randomly populate the field with animals and plants.
+     * Randomly populate the field with animals and plants. The species
+     * are tried for each cell in the order given by the species table,
+     * and the first one drawn is created there.
      */
     private void populate()
     {
-        Random rand = Randomizer.getRandom();
-
+        byte[] order = Species.getPopulationOrder();
         for(int row = 0; row < field.getDepth(); row++) {
             for(int col = 0; col < field.getWidth(); col++) {
-                // Populate animals.
-                if(rand.nextDouble() <= POLARBEAR_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    PolarBear bear = new PolarBear(true, field, location);
-                    animals.add(bear);
-                }
-
-                else if(rand.nextDouble() <= SEAL_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Seal seal = new Seal(true, field, location);
-                    animals.add(seal);
-                }
-
-                else if(rand.nextDouble() <= WHALE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Whale whale = new Whale(true, field, location);
-                    animals.add(whale);
-                }
-
-                else if(rand.nextDouble() <= COD_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Cod cod = new Cod(true, field, location);
-                    animals.add(cod);
-                }
-
-                else if(rand.nextDouble() <= PLANKTON_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Plankton plankton = new Plankton(true, field, location);
-                    animals.add(plankton);
-                }
-
-                //Populate plants.
-                else if(rand.nextDouble() <= ALGAE_CREATION_PROBABILITY){
-                    Location location = new Location(row, col);
-                    Algae algae = new Algae(true, field, location);
-                    plants.add(algae);
+                // Each cell makes its own draws, keyed by its position.
+                long cell = (long) row * field.getWidth() + col;
+                long id = randomizer.nextLong(cell, Randomizer.IDENTITY, 0);
+                for(int i = 0; i < order.length; i++) {
+                    byte species = order[i];
+                    if(randomizer.nextDouble(cell, Randomizer.POPULATE, i) <= parameters.getCreationProbability(species) * density) {
+                        Location location = field.locationAt(row, col);
+                        addCreature(createCreature(species, true, location, id));
+                        break;
+                    }
                 }
             }
         }
-
     }
 
     /**
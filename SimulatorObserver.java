@@ -0,0 +1,20 @@
+/**
+ * An observer of a running simulation. Observers are attached to a
+ * Simulator and are shown the state of the field after every step,
+ * so that displays and recorders stay out of the simulation engine.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public interface SimulatorObserver
+{
+    /**
+     * Called after each step of the simulation, and after a reset.
+     *
+     * @param step The step that has just completed.
+     * @param field The field holding the animals and plants.
+     * @param weather The current weather.
+     * @param day true if it is day time.
+     */
+    void stepCompleted(int step, Field field, Weather weather, boolean day);
+}
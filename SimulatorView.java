@@ -1,21 +1,36 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import javax.swing.*;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A graphical view of the simulation grid.
  * The view displays a colored rectangle for each location 
  * representing its contents. It uses a default background color.
- * Colors for each type of species can be defined using the
+ * Colors for each species code can be defined using the
  * setColor method.
+ * The view shows part of the field, which can be moved and zoomed.
+ * Zoomed in, the cells on screen are drawn; zoomed out, the field is
+ * drawn from a mipmap of the number of each species in blocks of the
+ * field, at the level of detail that suits the zoom. Either way the
+ * time it takes depends on the size of the screen, not of the field.
+ * 
+ * The simulation hands the view a snapshot after each step and
+ * carries on; the snapshot is drawn later on the event dispatch
+ * thread. When the simulation is faster than the screen, a snapshot
+ * not yet drawn is brought up to date rather than a new one made.
  * 
  * @author David J. Barnes and Michael Kölling
  * @author Leticia Piucco Marques and Ruobing Zhao
  * @version 2020.02.23
  */
-public class SimulatorView extends JFrame
+public class SimulatorView extends JFrame implements SimulatorObserver
 {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
@@ -23,6 +38,12 @@ public class SimulatorView extends JFrame
     // Color used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
 
+    // Color used for infected animals, whatever their species.
+    private static final Color INFECTED_COLOR = Color.BLACK;
+
+    // Color used beyond the edges of the field.
+    private static final Color OUTSIDE_COLOR = Color.darkGray;
+
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
     private final String WEATHER_PREFIX = "Weather: ";
@@ -31,10 +52,28 @@ public class SimulatorView extends JFrame
     private JLabel stepLabel, population, infoLabel, weatherLabel, dayLabel;
     private FieldView fieldView;
     
-    // A map for storing colors for participants in the simulation
-    private Map<Class, Color> colors;
+    // Colors for participants in the simulation, indexed by species code.
+    private Color[] colors;
+    // The same colors as RGB values, with the empty color at code 0.
+    private int[] palette;
     
-    private Map<Object, Color> infectColors;  
+
+    // The latest snapshot not yet drawn, or null.
+    private AtomicReference<Snapshot> latest;
+    // Snapshots that have been drawn, ready for reuse.
+    private Queue<Snapshot> spare;
+    // The last snapshot drawn, whose cells are drawn until the next.
+    private Snapshot cells;
+    // The version of each chunk of the field when it was last copied
+    // into a snapshot. Only used by the thread running the simulation.
+    private long[] seen;
+    // The number of chunks across the field.
+    private int chunkCols;
+    // The counts of each species in the blocks of the field, as of the
+    // last snapshot drawn.
+    private DensityMipmap mipmap;
+    // Whether drawing the latest snapshot has been asked for.
+    private AtomicBoolean renderPending;
     
     // A statistics object computing and storing simulation information
     private FieldStats stats;
@@ -47,8 +86,16 @@ public class SimulatorView extends JFrame
     public SimulatorView(int height, int width)
     {
         stats = new FieldStats();
-        colors = new LinkedHashMap<>();
-        infectColors = new LinkedHashMap<>();   
+        colors = new Color[Species.COUNT];
+        palette = new int[Species.COUNT];
+        Arrays.fill(palette, UNKNOWN_COLOR.getRGB());
+        palette[Species.EMPTY] = EMPTY_COLOR.getRGB();
+        latest = new AtomicReference<>();
+        spare = new ConcurrentLinkedQueue<>();
+        renderPending = new AtomicBoolean();
+        chunkCols = (width + Field.CHUNK_SIZE - 1) / Field.CHUNK_SIZE;
+        seen = new long[chunkCols * ((height + Field.CHUNK_SIZE - 1) / Field.CHUNK_SIZE)];
+        mipmap = new DensityMipmap(height, width);
 
         setTitle("Arctic Environment Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -77,23 +124,14 @@ public class SimulatorView extends JFrame
     }
     
     /**
-     * Define a color to be used for a given class of animal.
-     * @param animalClass The animal's Class object.
-     * @param color The color to be used for the given class.
-     */
-    public void setColor(Class animalClass, Color color)
-    {
-        colors.put(animalClass, color);
-    }
-    
-    /**
-     *  Define a color to be used for a given animal.
-     *  @param animal The animal being changed.
-     *  @param color The color to be used for the animal.
+     * Define a color to be used for a given species.
+     * @param species The species code.
+     * @param color The color to be used for the given species.
      */
-    public void setIndividualColor(Animal animal, Color color)
+    public void setColor(byte species, Color color)
     {
-        infectColors.put(animal, color);
+        colors[species] = color;
+        palette[species] = color.getRGB();
     }
     
     /**
@@ -105,25 +143,11 @@ public class SimulatorView extends JFrame
     }
 
     /**
-     * @return The color to be used for a given class of animal or individual animal.
-     */
-    private Color getColor(Class animalClass, Object obj)
-    {
-        Color infectCol = infectColors.get(obj);
-        if(infectCol != null) {
-            return infectCol;
-        }
-        else {
-            return getClassColor(animalClass);
-        }
-    }
-    
-    /**
-     * @return The color to be used for a given class of animal.
+     * @return The color to be used for a given species.
      */
-    public Color getClassColor(Class animalClass)
+    public Color getSpeciesColor(byte species)
     {
-        Color col = colors.get(animalClass);
+        Color col = colors[species];
         if(col != null) {
             return col; 
         }
@@ -134,45 +158,163 @@ public class SimulatorView extends JFrame
     }
     
     /**
-     * Show the current status of the field.
+     * Show the field after a step of the simulation.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     * @param weather The current weather.
+     * @param day true if it is day time.
+     */
+    public void stepCompleted(int step, Field field, Weather weather, boolean day)
+    {
+        showStatus(step, field, weather, day);
+    }
+
+    /**
+     * Show the current status of the field. Called by the thread
+     * running the simulation, which only copies into a snapshot what
+     * the view needs: the counts of the chunks that have changed since
+     * the last snapshot, and the cells around the part of the field on
+     * screen if it is close enough to show them. The snapshot is drawn
+     * on the event dispatch thread.
      * @param step Which iteration step it is.
      * @param field The field whose status is to be displayed.
+     * @param weather The current weather.
+     * @param day true if it is day time.
      */
     public void showStatus(int step, Field field, Weather weather, boolean day)
     {
+        // Take back the snapshot waiting to be drawn, if any. The
+        // chunks it holds have not been drawn, so they are copied again.
+        Snapshot snapshot = latest.getAndSet(null);
+        if(snapshot != null) {
+            for(int i = 0; i < snapshot.chunkCount; i++) {
+                seen[snapshot.chunks[i]] = -1;
+            }
+        }
+        else {
+            snapshot = spare.poll();
+            if(snapshot == null) {
+                snapshot = new Snapshot();
+            }
+        }
+        snapshot.step = step;
+        snapshot.weather = weather.toString();
+        snapshot.day = day;
+        for(int species = 1; species < Species.COUNT; species++) {
+            snapshot.counts[species] = field.getCount(species);
+        }
+        copyChangedChunks(field, snapshot);
+        copyCells(field, snapshot, fieldView.viewport);
+
+        latest.set(snapshot);
+        if(!renderPending.getAndSet(true)) {
+            SwingUtilities.invokeLater(this::render);
+        }
+    }
+
+    /**
+     * Copy the counts of the blocks of every chunk that has changed
+     * since it was last copied.
+     */
+    private void copyChangedChunks(Field field, Snapshot snapshot)
+    {
+        int chunkCols = field.getChunkColumns();
+        int perChunk = Field.CHUNK_BLOCKS * Field.CHUNK_BLOCKS * Species.COUNT;
+        snapshot.chunkCount = 0;
+        for(int index = 0; index < seen.length; index++) {
+            int chunkRow = index / chunkCols;
+            int chunkCol = index - chunkRow * chunkCols;
+            long version = field.getChunkVersion(chunkRow, chunkCol);
+            if(version == seen[index]) {
+                continue;
+            }
+            seen[index] = version;
+            int n = snapshot.chunkCount++;
+            if(n == snapshot.chunks.length) {
+                snapshot.chunks = Arrays.copyOf(snapshot.chunks, 2 * n + 16);
+                snapshot.blockCounts = Arrays.copyOf(snapshot.blockCounts, (2 * n + 16) * perChunk);
+            }
+            snapshot.chunks[n] = index;
+            field.countBlocks(chunkRow, chunkCol, snapshot.blockCounts, n * perChunk);
+        }
+    }
+
+    /**
+     * Copy the cells around the part of the field on screen, when it is
+     * shown closely enough to draw from cells rather than from blocks.
+     * Only every so many cells are copied when there are more cells
+     * than pixels, so what is copied depends on the size of the screen
+     * and not on the size of the field. A margin is copied as well, so
+     * the field can be moved a little between steps.
+     */
+    private void copyCells(Field field, Snapshot snapshot, Viewport viewport)
+    {
+        double cellsPerPixel = 1 / viewport.scale;
+        if(cellsPerPixel >= Field.BLOCK_SIZE) {
+            snapshot.rows = 0;
+            snapshot.cols = 0;
+            return;
+        }
+        int stride = Integer.highestOneBit(Math.max(1, (int) cellsPerPixel));
+        double rows = viewport.height * cellsPerPixel;
+        double cols = viewport.width * cellsPerPixel;
+        // Align the cells copied to the stride, so they stay the same
+        // cells as the field is moved.
+        int top = Math.max(0, (int) Math.floor(viewport.top - rows / 4)) / stride * stride;
+        int left = Math.max(0, (int) Math.floor(viewport.left - cols / 4)) / stride * stride;
+        int bottom = Math.min(field.getDepth(), (int) Math.ceil(viewport.top + rows * 5 / 4));
+        int right = Math.min(field.getWidth(), (int) Math.ceil(viewport.left + cols * 5 / 4));
+        snapshot.top = top;
+        snapshot.left = left;
+        snapshot.stride = stride;
+        snapshot.rows = Math.max(0, (bottom - top + stride - 1) / stride);
+        snapshot.cols = Math.max(0, (right - left + stride - 1) / stride);
+        int cells = snapshot.rows * snapshot.cols;
+        if(snapshot.species.length < cells) {
+            snapshot.species = new byte[cells];
+            snapshot.status = new byte[cells];
+        }
+        field.copyRegion(top, left, snapshot.rows, snapshot.cols, stride,
+                         snapshot.species, snapshot.status);
+    }
+
+    /**
+     * Draw the latest snapshot. Runs on the event dispatch thread.
+     */
+    private void render()
+    {
+        renderPending.set(false);
+        Snapshot snapshot = latest.getAndSet(null);
+        if(snapshot == null) {
+            return;
+        }
         if(!isVisible()) {
             setVisible(true);
         }
             
-        stepLabel.setText(STEP_PREFIX + step);
-        weatherLabel.setText(WEATHER_PREFIX + weather);
-        if(day){    
+        stepLabel.setText(STEP_PREFIX + snapshot.step);
+        weatherLabel.setText(WEATHER_PREFIX + snapshot.weather);
+        if(snapshot.day){    
             dayLabel.setText(DAY_PREFIX + "day");
         }
         else{
             dayLabel.setText(DAY_PREFIX + "night");
         }
 
-        
-        stats.reset();
-        
-        fieldView.preparePaint();
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass(), animal));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
-                }
-            }
+        int perChunk = Field.CHUNK_BLOCKS * Field.CHUNK_BLOCKS * Species.COUNT;
+        for(int i = 0; i < snapshot.chunkCount; i++) {
+            int index = snapshot.chunks[i];
+            mipmap.setChunk(index / chunkCols, index % chunkCols, snapshot.blockCounts, i * perChunk);
         }
-        stats.countFinished();
+        mipmap.update();
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
+        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(snapshot.counts));
+        // The cells of the last snapshot are kept for drawing until
+        // the next one comes.
+        if(cells != null) {
+            spare.offer(cells);
+        }
+        cells = snapshot;
         fieldView.repaint();
     }
 
@@ -192,16 +334,41 @@ public class SimulatorView extends JFrame
      * component displays the field.
      * This is rather advanced GUI stuff - you can ignore this 
      * for your project if you like.
+     * 
+     * The component shows part of the field, which can be moved by
+     * dragging it and zoomed in and out with the mouse wheel. Each
+     * pixel is drawn from the cell under it when the cells are large
+     * enough, and otherwise from the block of the density mipmap that
+     * is closest in size to a pixel, so drawing takes as long for a
+     * huge field as for a small one.
      */
     private class FieldView extends JPanel
     {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
+        // The largest size the component asks for, in pixels.
+        private final int MAX_VIEW_WIDTH = 1200;
+        private final int MAX_VIEW_HEIGHT = 800;
+        // The largest zoom, in pixels per cell.
+        private final double MAX_SCALE = 32;
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        // The part of the field shown, as last published to the thread
+        // running the simulation.
+        private volatile Viewport viewport;
+        // The pixels per cell, and the cell at the top left corner of
+        // the component.
+        private double scale;
+        private double top, left;
+        // The smallest zoom, which shows the whole field at half size.
+        private double minScale;
+        // The image drawn, the size of the component, and its pixels.
+        private BufferedImage fieldImage;
+        private int[] pixels;
+        // The row of the cell under each row of pixels, and the column
+        // of the cell under each column of pixels; -1 off the field.
+        private int[] cellRows, cellCols;
+        // Where the field was grabbed, while it is being dragged.
+        private Point grab;
 
         /**
          * Create a new FieldView component.
@@ -210,7 +377,47 @@ public class SimulatorView extends JFrame
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            scale = Math.min(GRID_VIEW_SCALING_FACTOR,
+                             Math.min((double) MAX_VIEW_WIDTH / width,
+                                      (double) MAX_VIEW_HEIGHT / height));
+            minScale = scale / 2;
+            viewport = new Viewport(0, 0, scale, (int) Math.ceil(width * scale),
+                                    (int) Math.ceil(height * scale));
+
+            MouseAdapter mouse = new MouseAdapter() {
+                public void mousePressed(MouseEvent e)
+                {
+                    grab = e.getPoint();
+                }
+
+                public void mouseDragged(MouseEvent e)
+                {
+                    if(grab != null) {
+                        moveTo(top - (e.getY() - grab.y) / scale,
+                               left - (e.getX() - grab.x) / scale);
+                        grab = e.getPoint();
+                    }
+                }
+
+                public void mouseReleased(MouseEvent e)
+                {
+                    grab = null;
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e)
+                {
+                    // Keep the cell under the mouse where it is.
+                    double newScale = scale * Math.pow(2, -e.getWheelRotation());
+                    newScale = Math.max(minScale, Math.min(MAX_SCALE, newScale));
+                    double row = top + e.getY() / scale;
+                    double col = left + e.getX() / scale;
+                    scale = newScale;
+                    moveTo(row - e.getY() / scale, col - e.getX() / scale);
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
         }
 
         /**
@@ -218,57 +425,198 @@ public class SimulatorView extends JFrame
          */
         public Dimension getPreferredSize()
         {
-            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
-                                 gridHeight * GRID_VIEW_SCALING_FACTOR);
+            return new Dimension((int) Math.ceil(gridWidth * scale),
+                                 (int) Math.ceil(gridHeight * scale));
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * Show the part of the field with the given cell at the top
+         * left corner, keeping some of the field on screen.
          */
-        public void preparePaint()
+        private void moveTo(double row, double col)
         {
-            if(! size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
-                }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
+            double rows = getHeight() / scale;
+            double cols = getWidth() / scale;
+            top = Math.max(-rows / 2, Math.min(gridHeight - rows / 2, row));
+            left = Math.max(-cols / 2, Math.min(gridWidth - cols / 2, col));
+            repaint();
+        }
+
+        /**
+         * Draw the part of the field on screen into the image, and
+         * publish it to the thread running the simulation.
+         */
+        private void drawField()
+        {
+            int width = Math.max(1, getWidth());
+            int height = Math.max(1, getHeight());
+            if(fieldImage == null || fieldImage.getWidth() != width
+               || fieldImage.getHeight() != height) {
+                fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+                cellRows = new int[height];
+                cellCols = new int[width];
+            }
+            viewport = new Viewport(top, left, scale, width, height);
+            for(int y = 0; y < height; y++) {
+                int row = (int) Math.floor(top + (y + 0.5) / scale);
+                cellRows[y] = row >= 0 && row < gridHeight ? row : -1;
+            }
+            for(int x = 0; x < width; x++) {
+                int col = (int) Math.floor(left + (x + 0.5) / scale);
+                cellCols[x] = col >= 0 && col < gridWidth ? col : -1;
+            }
+
+            // The finest level of blocks no larger than a pixel.
+            int level = DensityMipmap.FIRST_LEVEL;
+            while(level < mipmap.getTopLevel() && (2 << level) <= 1 / scale) {
+                level++;
+            }
+            boolean fromCells = 1 / scale < Field.BLOCK_SIZE;
+            int[] counts = mipmap.getCounts(level);
+            int blockCells = 1 << (2 * level);
+            int outside = OUTSIDE_COLOR.getRGB();
+            int infected = INFECTED_COLOR.getRGB();
+            Snapshot snapshot = cells;
+            for(int y = 0; y < height; y++) {
+                int row = cellRows[y];
+                int offset = y * width;
+                for(int x = 0; x < width; x++) {
+                    int col = cellCols[x];
+                    int rgb;
+                    if(row < 0 || col < 0) {
+                        rgb = outside;
+                    }
+                    else if(fromCells && snapshot != null && snapshot.holds(row, col)) {
+                        int index = snapshot.indexOf(row, col);
+                        rgb = snapshot.status[index] == Animal.INFECTED ? infected
+                              : palette[snapshot.species[index]];
+                    }
+                    else {
+                        rgb = blend(counts, mipmap.offsetOf(level, row, col), blockCells);
+                    }
+                    pixels[offset + x] = rgb;
                 }
             }
         }
-        
+
         /**
-         * Paint on grid location on this field in a given color.
+         * Mix the colors of the occupants of a block, in proportion to
+         * their numbers, with the empty color for the cells left.
+         * @param counts The counts of a level of the mipmap.
+         * @param offset Where the counts of the block start.
+         * @param cells The number of cells in the block.
+         * @return The color of the block.
          */
-        public void drawMark(int x, int y, Color color)
+        private int blend(int[] counts, int offset, int cells)
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            int occupied = 0;
+            for(int species = 1; species < Species.COUNT; species++) {
+                occupied += counts[offset + species];
+            }
+            if(occupied == 0) {
+                return palette[Species.EMPTY];
+            }
+            // Infected animals are drawn in their own color, in place
+            // of the color of their species.
+            int infected = counts[offset];
+            double healthy = (double) (occupied - infected) / occupied;
+            double red = 0, green = 0, blue = 0;
+            for(int species = 1; species < Species.COUNT; species++) {
+                double weight = counts[offset + species] * healthy;
+                int rgb = palette[species];
+                red += weight * (rgb >> 16 & 0xff);
+                green += weight * (rgb >> 8 & 0xff);
+                blue += weight * (rgb & 0xff);
+            }
+            int sick = INFECTED_COLOR.getRGB();
+            int empty = palette[Species.EMPTY];
+            int free = Math.max(0, cells - occupied);
+            red += infected * (sick >> 16 & 0xff) + free * (empty >> 16 & 0xff);
+            green += infected * (sick >> 8 & 0xff) + free * (empty >> 8 & 0xff);
+            blue += infected * (sick & 0xff) + free * (empty & 0xff);
+            int total = occupied + free;
+            return (int) (red / total) << 16 | (int) (green / total) << 8 | (int) (blue / total);
         }
 
         /**
-         * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * The field view component needs to be redisplayed. Draw the
+         * part of the field on screen, and copy it to the screen.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                }
-                else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
-                }
-            }
+            drawField();
+            g.drawImage(fieldImage, 0, 0, null);
+        }
+    }
+
+    /**
+     * The part of the field on screen, as handed from the event
+     * dispatch thread to the simulation.
+     */
+    private static class Viewport
+    {
+        // The cell at the top left corner of the screen.
+        private final double top, left;
+        // The pixels per cell.
+        private final double scale;
+        // The size of the screen, in pixels.
+        private final int width, height;
+
+        /**
+         * Describe the part of the field on screen.
+         */
+        Viewport(double top, double left, double scale, int width, int height)
+        {
+            this.top = top;
+            this.left = left;
+            this.scale = scale;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * What the view needs of the field after one step, as handed from
+     * the simulation to the event dispatch thread. A snapshot is only
+     * written before it is published and only read after, and is
+     * reused once a later one has been drawn.
+     */
+    private static class Snapshot
+    {
+        private int step;
+        private String weather;
+        private boolean day;
+        // The number of each species, indexed by species code.
+        private int[] counts = new int[Species.COUNT];
+        // The chunks that changed, by position among the chunks, and
+        // the counts of their blocks, as written by Field.countBlocks().
+        private int chunkCount;
+        private int[] chunks = new int[0];
+        private int[] blockCounts = new int[0];
+        // The cells copied, every stride-th cell of a region, row by
+        // row: their species code and infection status.
+        private int top, left, rows, cols, stride;
+        private byte[] species = new byte[0];
+        private byte[] status = new byte[0];
+
+        /**
+         * @return true if the cells copied include one in the cell
+         *         of the given row and column.
+         */
+        boolean holds(int row, int col)
+        {
+            return row >= top && col >= left
+                   && (row - top) / stride < rows && (col - left) / stride < cols;
+        }
+
+        /**
+         * @return The position of the copy of a cell, for one that
+         *         is held.
+         */
+        int indexOf(int row, int col)
+        {
+            return (row - top) / stride * cols + (col - left) / stride;
         }
     }
 }
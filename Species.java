@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * The table of the species living in the ocean, and the codes used to
+ * tag the cells of a field with them.
+ * Code 0 marks an empty cell; every other code identifies one
+ * kind of creature, so species checks become plain byte reads.
+ *
+ * The species are not written in code but read, once, from a table of
+ * properties: the file named by the system property "species.table",
+ * or else species.properties in the working directory or on the class
+ * path. The table lists the species, in the order of their codes, as
+ *
+ *     species = Cod, Seal, ...
+ *
+ * and describes each by properties named "Name.property":
+ *
+ *     kind                 animal or plant
+ *     maxAge               the age it can live up to
+ *     color                the colour it is drawn in, as #rrggbb
+ *     creation             the probability of creating it in a cell
+ *     breedingAge          the age it can start to breed at
+ *     breedingProbability  the likelihood of it breeding in a step
+ *     maxLitter            the most births of one breeding
+ *
+ * and, for animals only,
+ *
+ *     active               the periods it is active in: day, night
+ *     eats                 its prey and the food level each gives,
+ *                          as Prey:food, Prey:food, ...
+ *     food                 its food level at birth, by default the
+ *                          highest food level of its prey
+ *     needsMate            true if it only breeds next to a mate
+ *
+ * and, for plants only,
+ *
+ *     growRate             how fast it grows
+ *     rainGrowth           how much faster it grows each step of rain
+ *
+ * The order in which the species are tried for each cell of a new
+ * field may be given as "populate", and is that of the codes otherwise.
+ * The prey of every animal, with the food level each gives, make up the
+ * diet matrix of the table.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public final class Species
+{
+    // The system property naming the table, and the name of the table
+    // looked for otherwise.
+    public static final String TABLE_PROPERTY = "species.table";
+    public static final String TABLE_NAME = "species.properties";
+    // Code of a cell that holds no creature.
+    public static final byte EMPTY = 0;
+    // The most codes there can be: every species is a bit of an int in
+    // the masks of the diseases.
+    public static final int MAX_COUNT = 31;
+    // Number of codes, including the empty code.
+    public static final int COUNT;
+
+    // Display names, indexed by species code.
+    private static final String[] NAMES;
+    // Whether each species is a plant rather than an animal.
+    private static final boolean[] PLANTS;
+    // The age to which each species can live, and the colour it is
+    // drawn in.
+    private static final int[] MAX_AGES;
+    private static final int[] COLORS;
+    // The usual creation and breeding parameters of each species.
+    private static final double[] CREATION;
+    private static final int[] BREEDING_AGES;
+    private static final double[] BREEDING_PROBABILITIES;
+    private static final int[] MAX_LITTERS;
+    // The activity mask of each animal, whether it needs a mate to
+    // breed, and its food level at birth.
+    private static final int[] ACTIVITIES;
+    private static final boolean[] NEEDS_MATE;
+    private static final int[] FOOD_LEVELS;
+    // The diet matrix: the food level an animal is left with after
+    // eating each species, indexed by predator then prey code, or 0 if
+    // it does not eat it. The prey of each animal are listed as well.
+    private static final int[][] FOOD_VALUES;
+    private static final byte[][] PREY;
+    // The rate of growth of each plant, and how much it rises in each
+    // step of rain.
+    private static final double[] GROW_RATES;
+    private static final double[] RAIN_GROWTH;
+    // The order in which the species are tried for each cell of a new
+    // field.
+    private static final byte[] POPULATION_ORDER;
+
+    static {
+        Properties table = loadTable();
+        String[] names = list(table, "species");
+        COUNT = names.length + 1;
+        if(COUNT > MAX_COUNT) {
+            throw new IllegalArgumentException("The species table lists more than "
+                                               + (MAX_COUNT - 1) + " species");
+        }
+        NAMES = new String[COUNT];
+        NAMES[EMPTY] = "Empty";
+        System.arraycopy(names, 0, NAMES, 1, names.length);
+        PLANTS = new boolean[COUNT];
+        MAX_AGES = new int[COUNT];
+        COLORS = new int[COUNT];
+        CREATION = new double[COUNT];
+        BREEDING_AGES = new int[COUNT];
+        BREEDING_PROBABILITIES = new double[COUNT];
+        MAX_LITTERS = new int[COUNT];
+        ACTIVITIES = new int[COUNT];
+        NEEDS_MATE = new boolean[COUNT];
+        FOOD_LEVELS = new int[COUNT];
+        FOOD_VALUES = new int[COUNT][COUNT];
+        PREY = new byte[COUNT][0];
+        GROW_RATES = new double[COUNT];
+        RAIN_GROWTH = new double[COUNT];
+        for(byte species = 1; species < COUNT; species++) {
+            readSpecies(table, species);
+        }
+
+        String[] order = table.containsKey("populate") ? list(table, "populate") : names;
+        POPULATION_ORDER = new byte[order.length];
+        for(int i = 0; i < order.length; i++) {
+            POPULATION_ORDER[i] = code(order[i], "populate");
+        }
+    }
+
+    /**
+     * Species is not meant to be instantiated.
+     */
+    private Species()
+    {
+    }
+
+    /**
+     * @param species A species code.
+     * @return The display name of the species.
+     */
+    public static String getName(int species)
+    {
+        return NAMES[species];
+    }
+
+    /**
+     * @param name The name of a species, in any case.
+     * @return The code of the species, or EMPTY if there is none.
+     */
+    public static byte getCode(String name)
+    {
+        for(byte species = 1; species < COUNT; species++) {
+            if(NAMES[species].equalsIgnoreCase(name)) {
+                return species;
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * @param species A species code.
+     * @return true if the species is a plant, false if it is an animal.
+     */
+    public static boolean isPlant(byte species)
+    {
+        return PLANTS[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The age to which the species can live.
+     */
+    public static int getMaxAge(byte species)
+    {
+        return MAX_AGES[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The colour the species is drawn in, as 0xrrggbb.
+     */
+    public static int getColor(byte species)
+    {
+        return COLORS[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The usual probability of creating the species in a cell.
+     */
+    public static double getCreationProbability(byte species)
+    {
+        return CREATION[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The usual age at which the species can start to breed.
+     */
+    public static int getBreedingAge(byte species)
+    {
+        return BREEDING_AGES[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The usual likelihood of the species breeding.
+     */
+    public static double getBreedingProbability(byte species)
+    {
+        return BREEDING_PROBABILITIES[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The usual maximum number of births of the species.
+     */
+    public static int getMaxLitterSize(byte species)
+    {
+        return MAX_LITTERS[species];
+    }
+
+    /**
+     * @param species The code of an animal species.
+     * @return The periods the species is active in, as a mask of
+     *         Animal.ACTIVE_BY_DAY and Animal.ACTIVE_BY_NIGHT.
+     */
+    public static int getActivity(byte species)
+    {
+        return ACTIVITIES[species];
+    }
+
+    /**
+     * @param species The code of an animal species.
+     * @return true if the species only breeds next to a mate.
+     */
+    public static boolean needsMate(byte species)
+    {
+        return NEEDS_MATE[species];
+    }
+
+    /**
+     * @param species The code of an animal species.
+     * @return The food level of the species at birth.
+     */
+    public static int getFoodLevel(byte species)
+    {
+        return FOOD_LEVELS[species];
+    }
+
+    /**
+     * @param predator The code of an animal species.
+     * @param prey A species code.
+     * @return The food level the predator is left with after eating
+     *         the prey, or 0 if it does not eat it.
+     */
+    public static int getFoodValue(byte predator, byte prey)
+    {
+        return FOOD_VALUES[predator][prey];
+    }
+
+    /**
+     * @param species The code of an animal species.
+     * @return The codes of the species it eats. Not to be changed.
+     */
+    public static byte[] getPrey(byte species)
+    {
+        return PREY[species];
+    }
+
+    /**
+     * @param species The code of a plant species.
+     * @return The rate at which the species grows.
+     */
+    public static double getGrowRate(byte species)
+    {
+        return GROW_RATES[species];
+    }
+
+    /**
+     * @param species The code of a plant species.
+     * @return How much the rate of growth rises in each step of rain.
+     */
+    public static double getRainGrowth(byte species)
+    {
+        return RAIN_GROWTH[species];
+    }
+
+    /**
+     * @return The codes of the species in the order they are tried for
+     *         each cell of a new field. Not to be changed.
+     */
+    public static byte[] getPopulationOrder()
+    {
+        return POPULATION_ORDER;
+    }
+
+    /**
+     * Read the table from the file named by the system property, or
+     * from the first table found in the working directory or on the
+     * class path.
+     */
+    private static Properties loadTable()
+    {
+        Properties table = new Properties();
+        String name = System.getProperty(TABLE_PROPERTY);
+        Path path = Paths.get(name != null ? name : TABLE_NAME);
+        try {
+            if(name != null || Files.exists(path)) {
+                try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    table.load(reader);
+                }
+            }
+            else {
+                try(InputStream in = Species.class.getResourceAsStream("/" + TABLE_NAME)) {
+                    if(in == null) {
+                        throw new IllegalStateException("No species table: " + TABLE_NAME
+                                                        + " was not found");
+                    }
+                    table.load(in);
+                }
+            }
+        }
+        catch(IOException e) {
+            throw new IllegalStateException("Could not read the species table " + path, e);
+        }
+        return table;
+    }
+
+    /**
+     * Read the properties of one species.
+     */
+    private static void readSpecies(Properties table, byte species)
+    {
+        String name = NAMES[species];
+        String kind = value(table, name + ".kind");
+        if(!kind.equalsIgnoreCase("animal") && !kind.equalsIgnoreCase("plant")) {
+            throw new IllegalArgumentException(name + ".kind must be animal or plant");
+        }
+        PLANTS[species] = kind.equalsIgnoreCase("plant");
+        MAX_AGES[species] = integer(table, name + ".maxAge");
+        COLORS[species] = integer(table, name + ".color");
+        CREATION[species] = number(table, name + ".creation");
+        BREEDING_AGES[species] = integer(table, name + ".breedingAge");
+        BREEDING_PROBABILITIES[species] = number(table, name + ".breedingProbability");
+        MAX_LITTERS[species] = integer(table, name + ".maxLitter");
+        if(PLANTS[species]) {
+            GROW_RATES[species] = number(table, name + ".growRate");
+            RAIN_GROWTH[species] = number(table, name + ".rainGrowth");
+            return;
+        }
+
+        for(String period : list(table, name + ".active")) {
+            if(period.equalsIgnoreCase("day")) {
+                ACTIVITIES[species] |= Animal.ACTIVE_BY_DAY;
+            }
+            else if(period.equalsIgnoreCase("night")) {
+                ACTIVITIES[species] |= Animal.ACTIVE_BY_NIGHT;
+            }
+            else {
+                throw new IllegalArgumentException(name + ".active must list day and night");
+            }
+        }
+        NEEDS_MATE[species] = Boolean.parseBoolean(table.getProperty(name + ".needsMate", "false").trim());
+        String[] diet = list(table, name + ".eats");
+        PREY[species] = new byte[diet.length];
+        int highest = 0;
+        for(int i = 0; i < diet.length; i++) {
+            int colon = diet[i].indexOf(':');
+            if(colon < 0) {
+                throw new IllegalArgumentException(name + ".eats must list Prey:food");
+            }
+            byte prey = code(diet[i].substring(0, colon).trim(), name + ".eats");
+            int food = parseInteger(diet[i].substring(colon + 1).trim(), name + ".eats");
+            if(food <= 0) {
+                throw new IllegalArgumentException(name + ".eats must give food levels above 0");
+            }
+            PREY[species][i] = prey;
+            FOOD_VALUES[species][prey] = food;
+            highest = Math.max(highest, food);
+        }
+        FOOD_LEVELS[species] = table.containsKey(name + ".food")
+                               ? integer(table, name + ".food") : highest;
+        if(FOOD_LEVELS[species] <= 0) {
+            throw new IllegalArgumentException(name + " needs a food level above 0");
+        }
+    }
+
+    /**
+     * Return the code of a species named in the table.
+     */
+    private static byte code(String name, String key)
+    {
+        byte species = getCode(name);
+        if(species == EMPTY) {
+            throw new IllegalArgumentException("Unknown species " + name + " in " + key);
+        }
+        return species;
+    }
+
+    /**
+     * Return a property of the table, which must be there.
+     */
+    private static String value(Properties table, String key)
+    {
+        String value = table.getProperty(key);
+        if(value == null) {
+            throw new IllegalArgumentException("The species table has no " + key);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Return a property of the table holding a comma separated list.
+     */
+    private static String[] list(Properties table, String key)
+    {
+        String value = value(table, key);
+        return value.isEmpty() ? new String[0] : value.split("\\s*,\\s*");
+    }
+
+    /**
+     * Return a property of the table holding a whole number, which may
+     * be written in hexadecimal after # or 0x.
+     */
+    private static int integer(Properties table, String key)
+    {
+        return parseInteger(value(table, key), key);
+    }
+
+    /**
+     * Parse a whole number of the table.
+     */
+    private static int parseInteger(String value, String key)
+    {
+        try {
+            return Integer.decode(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value " + value + " for " + key);
+        }
+    }
+
+    /**
+     * Return a property of the table holding a number.
+     */
+    private static double number(Properties table, String key)
+    {
+        String value = value(table, key);
+        try {
+            return Double.parseDouble(value);
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value " + value + " for " + key);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run the steps of a simulation on several threads.
+ * The field is split into square tiles, and each tile is given one of
+ * four colours in a 2x2 checkerboard pattern, so two tiles of the same
+ * colour are always a whole tile apart. A creature only looks at, eats
+ * from or moves into the cells next to its own, so every tile of one
+ * colour can be updated at the same time without touching the cells of
+ * another. The four colours are updated one after another.
+ *
+ * Each creature is assigned to the tile it starts the step in, and acts
+ * once. Births are collected in a buffer per tile and handed back in
+ * tile order.
+ *
+ * A run is the same whatever the number of threads, since the tiles of
+ * one colour never touch and each tile is updated in a fixed order. It
+ * is not the same as a run of the single-threaded engine, though: that
+ * engine lets the creatures act in the order of its lists, and where
+ * creatures compete for a cell, a prey or a birth place the outcome
+ * depends on who acts first. Both engines keep the field and the lists
+ * consistent, which Simulator checks after every step when assertions
+ * are enabled, but their courses diverge from the same seed.
+ *
+ * @author Leticia Piucco Marques and Ruobing Zhao
+ * @version 2020.02.23
+ */
+public class TiledStepper
+{
+    // The default side of a tile, in cells.
+    public static final int DEFAULT_TILE_SIZE = 32;
+    // The number of tile colours.
+    private static final int COLOURS = 4;
+
+    // The simulator whose creatures are updated.
+    private Simulator simulator;
+    // The pool running the tiles.
+    private ForkJoinPool pool;
+    // The side of a tile, and the number of tiles down and across.
+    private int tileSize, tileRows, tileCols;
+    // The tiles of each colour.
+    private int[][] tilesByColour;
+    // The creatures to update in this step, per tile.
+    private List<List<Animal>> tileAnimals;
+    private List<List<Plant>> tilePlants;
+    // The creatures born in this step, per tile.
+    private List<List<Animal>> bornAnimals;
+    private List<List<Plant>> bornPlants;
+
+    /**
+     * Create a stepper for the given simulator and field.
+     *
+     * @param simulator The simulator whose creatures are updated.
+     * @param field The field the creatures live in.
+     * @param tileSize The side of a tile, in cells. Must be at least 2.
+     * @param threads The number of worker threads.
+     */
+    public TiledStepper(Simulator simulator, Field field, int tileSize, int threads)
+    {
+        if(tileSize < 2) {
+            System.out.println("Tiles must be at least two cells wide.");
+            System.out.println("Using default tile size.");
+            tileSize = DEFAULT_TILE_SIZE;
+        }
+        this.simulator = simulator;
+        this.tileSize = tileSize;
+        pool = new ForkJoinPool(threads);
+        tileRows = (field.getDepth() + tileSize - 1) / tileSize;
+        tileCols = (field.getWidth() + tileSize - 1) / tileSize;
+
+        int tiles = tileRows * tileCols;
+        tileAnimals = new ArrayList<>(tiles);
+        tilePlants = new ArrayList<>(tiles);
+        bornAnimals = new ArrayList<>(tiles);
+        bornPlants = new ArrayList<>(tiles);
+        for(int tile = 0; tile < tiles; tile++) {
+            tileAnimals.add(new ArrayList<>());
+            tilePlants.add(new ArrayList<>());
+            bornAnimals.add(new ArrayList<>());
+            bornPlants.add(new ArrayList<>());
+        }
+
+        int[] sizes = new int[COLOURS];
+        for(int tile = 0; tile < tiles; tile++) {
+            sizes[colourOf(tile)]++;
+        }
+        tilesByColour = new int[COLOURS][];
+        for(int colour = 0; colour < COLOURS; colour++) {
+            tilesByColour[colour] = new int[sizes[colour]];
+            sizes[colour] = 0;
+        }
+        for(int tile = 0; tile < tiles; tile++) {
+            int colour = colourOf(tile);
+            tilesByColour[colour][sizes[colour]++] = tile;
+        }
+    }
+
+    /**
+     * Let the given animals act for one step.
+     * Dead animals are left in the lists for the caller to remove.
+     *
+     * @param buckets Lists of the animals to act.
+     * @param newAnimals A list to receive newly born animals.
+     */
+    public void actAnimals(List<List<Animal>> buckets, List<Animal> newAnimals)
+    {
+        for(List<Animal> animals : buckets) {
+            for(Animal animal : animals) {
+                if(animal.isAlive()) {
+                    tileAnimals.get(tileOf(animal.getLocation())).add(animal);
+                }
+            }
+        }
+        for(int colour = 0; colour < COLOURS; colour++) {
+            int[] tiles = tilesByColour[colour];
+            pool.invoke(new TileTask(tiles, 0, tiles.length, true));
+        }
+        for(int tile = 0; tile < tileAnimals.size(); tile++) {
+            tileAnimals.get(tile).clear();
+            newAnimals.addAll(bornAnimals.get(tile));
+            bornAnimals.get(tile).clear();
+        }
+    }
+
+    /**
+     * Let every plant act for one step, once the animals have eaten.
+     * Dead plants are left in the list for the caller to remove.
+     *
+     * @param plants The plants in the field.
+     * @param newPlants A list to receive newly born plants.
+     */
+    public void actPlants(List<Plant> plants, List<Plant> newPlants)
+    {
+        for(Plant plant : plants) {
+            if(plant.isAlive()) {
+                tilePlants.get(tileOf(plant.getLocation())).add(plant);
+            }
+        }
+        for(int colour = 0; colour < COLOURS; colour++) {
+            int[] tiles = tilesByColour[colour];
+            pool.invoke(new TileTask(tiles, 0, tiles.length, false));
+        }
+        for(int tile = 0; tile < tilePlants.size(); tile++) {
+            tilePlants.get(tile).clear();
+            newPlants.addAll(bornPlants.get(tile));
+            bornPlants.get(tile).clear();
+        }
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * @param location A location in the field.
+     * @return The tile containing the location.
+     */
+    private int tileOf(Location location)
+    {
+        return (location.getRow() / tileSize) * tileCols + location.getCol() / tileSize;
+    }
+
+    /**
+     * @param tile A tile of the field.
+     * @return The colour of the tile.
+     */
+    private int colourOf(int tile)
+    {
+        int tileRow = tile / tileCols;
+        int tileCol = tile % tileCols;
+        return (tileRow % 2) * 2 + (tileCol % 2);
+    }
+
+    /**
+     * Update a range of tiles of one colour, splitting the range
+     * between the workers of the pool.
+     */
+    private class TileTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int[] tiles;
+        private int from, to;
+        private boolean animals;
+
+        /**
+         * @param tiles The tiles of one colour.
+         * @param from The first tile of the range.
+         * @param to The end of the range, exclusive.
+         * @param animals true to update animals, false to update plants.
+         */
+        TileTask(int[] tiles, int from, int to, boolean animals)
+        {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.animals = animals;
+        }
+
+        /**
+         * Update the tiles, or split the range in two.
+         */
+        protected void compute()
+        {
+            if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, middle, animals),
+                          new TileTask(tiles, middle, to, animals));
+            }
+            else if(to > from) {
+                int tile = tiles[from];
+                if(animals) {
+                    List<Animal> born = bornAnimals.get(tile);
+                    for(Animal animal : tileAnimals.get(tile)) {
+                        simulator.actAnimal(animal, born);
+                    }
+                }
+                else {
+                    List<Plant> born = bornPlants.get(tile);
+                    for(Plant plant : tilePlants.get(tile)) {
+                        simulator.actPlant(plant, born);
+                    }
+                }
+            }
+        }
+    }
+}
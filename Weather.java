@@ -1,4 +1,4 @@
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 /**
  * A class representing the weather.
@@ -15,18 +15,21 @@ public class Weather
     private boolean raining = false;
     private boolean snowing = false;
     
-    private Random random = Randomizer.getRandom();
+    private Randomizer random;
 
     /**
      * Creates a weather with a random temperature and
      * sets truth-value to sunny. If not sunny, the temperature
      * determines if it is raining or snowing.
+     * 
+     * @param random The source of random numbers of the simulation.
      */
-    public Weather()
+    public Weather(Randomizer random)
     {
-       temperature = random.nextInt(40);
+       this.random = random;
+       temperature = random.nextInt(Randomizer.NO_ENTITY, Randomizer.TEMPERATURE, 40);
        
-       sunny = random.nextBoolean();
+       sunny = random.nextBoolean(Randomizer.NO_ENTITY, Randomizer.SUNSHINE);
        if(!sunny){
            if(temperature > 20){
                raining = true;
@@ -41,8 +44,8 @@ public class Weather
      * Changes the values of the temperature and weather conditions.
      */
     public void update(){
-       temperature = random.nextInt(40);
-       sunny = random.nextBoolean();
+       temperature = random.nextInt(Randomizer.NO_ENTITY, Randomizer.TEMPERATURE, 40);
+       sunny = random.nextBoolean(Randomizer.NO_ENTITY, Randomizer.SUNSHINE);
        if(!sunny){
            if(temperature > 20){
                raining = true;
@@ -53,6 +56,32 @@ public class Weather
        }
     }
     
+    /**
+     * Write the weather for a checkpoint.
+     * 
+     * @param buffer The buffer to write to.
+     */
+    public void writeState(ByteBuffer buffer)
+    {
+        buffer.putInt(temperature);
+        buffer.put((byte) (sunny ? 1 : 0));
+        buffer.put((byte) (raining ? 1 : 0));
+        buffer.put((byte) (snowing ? 1 : 0));
+    }
+
+    /**
+     * Read the weather written by writeState.
+     * 
+     * @param buffer The buffer to read from.
+     */
+    public void readState(ByteBuffer buffer)
+    {
+        temperature = buffer.getInt();
+        sunny = buffer.get() != 0;
+        raining = buffer.get() != 0;
+        snowing = buffer.get() != 0;
+    }
+
     /**
      * @return The current temperature.
      */